@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+import com.github.technosf.slf4.interceptor.LogLevel;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * One SSE client connection
+ * <p>
+ * Requests one batch of events at a time, writing each batch that passes the
+ * connection's filters with a single write and flush.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+final class SseConnection
+        implements Flow.Subscriber<List<InterceptedEvent>>
+{
+
+    /**
+     * The HTTP exchange
+     */
+    private final HttpExchange exchange;
+
+    /**
+     * The lowest level sent
+     */
+    private final LogLevel level;
+
+    /**
+     * Logger name prefixes sent, all if empty
+     */
+    private final String[] loggers;
+
+    /**
+     * Count of connections dropped for falling behind
+     */
+    private final AtomicLong dropped;
+
+    /**
+     * The subscription
+     */
+    private Flow.Subscription subscription;
+
+
+    /**
+     * @param exchange
+     *            the HTTP exchange
+     * @param level
+     *            the lowest level sent
+     * @param loggers
+     *            logger name prefixes sent, all if empty
+     * @param dropped
+     *            count of connections dropped for falling behind
+     */
+    SseConnection(HttpExchange exchange, LogLevel level, String[] loggers,
+            AtomicLong dropped)
+    {
+        this.exchange = exchange;
+        this.level = level;
+        this.loggers = loggers;
+        this.dropped = dropped;
+    }
+
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+
+    @Override
+    public void onNext(List<InterceptedEvent> events)
+    {
+        StringBuilder frames = new StringBuilder();
+        for (InterceptedEvent event : events)
+        {
+            if (accept(event))
+                frame(frames, event);
+        }
+
+        if (frames.length() > 0)
+        {
+            try
+            {
+                OutputStream body = exchange.getResponseBody();
+                body.write(frames.toString().getBytes(StandardCharsets.UTF_8));
+                body.flush();
+            }
+            catch (IOException e)
+            /*
+             * Client has gone
+             */
+            {
+                subscription.cancel();
+                exchange.close();
+                return;
+            }
+        }
+        subscription.request(1);
+    }
+
+
+    /**
+     * Ends the connection, the client having fallen behind
+     */
+    @Override
+    public void onError(Throwable throwable)
+    {
+        exchange.close();
+    }
+
+
+    /**
+     * Drops the connection, the client having fallen behind. Closing the
+     * exchange fails a write blocked on the client, which would otherwise
+     * hold its thread, and delay {@code onError}, for as long as the client
+     * stalls.
+     */
+    void drop()
+    {
+        dropped.incrementAndGet();
+        exchange.close();
+    }
+
+
+    @Override
+    public void onComplete()
+    {
+        exchange.close();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Applies the connection filters
+     *
+     * @param event
+     *            the event
+     * @return true if the event should be sent
+     */
+    private boolean accept(InterceptedEvent event)
+    {
+        if (event.getLevel().logLevel < level.logLevel)
+            return false;
+        if (loggers.length == 0)
+            return true;
+        for (String logger : loggers)
+        {
+            if (event.getLoggerName().startsWith(logger))
+                return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Appends an event as an SSE frame, named for its level, with a data line
+     * per message line
+     *
+     * @param frames
+     *            the frames
+     * @param event
+     *            the event
+     */
+    private static void frame(StringBuilder frames, InterceptedEvent event)
+    {
+        frames.append("event: ").append(event.getLevel()).append('\n');
+        String data = event.getTimestamp() + " " + event.getLoggerName()
+                + " - " + event.getMessage();
+        if (event.getThrowable() != null)
+            data += "\n" + event.getThrowable();
+        for (String line : data.split("\r?\n|\r", -1))
+            frames.append("data: ").append(line).append('\n');
+        frames.append('\n');
+    }
+}
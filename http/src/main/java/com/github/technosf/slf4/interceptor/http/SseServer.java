@@ -0,0 +1,374 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+import com.github.technosf.slf4.interceptor.LogLevel;
+import com.github.technosf.slf4.interceptor.util.AsyncOutputStream.OverflowPolicy;
+import com.github.technosf.slf4.interceptor.util.BackpressurePublisher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP endpoint streaming intercepted events as Server-Sent Events
+ * <p>
+ * Built on the JDK's {@code com.sun.net.httpserver}, so it needs no servlet
+ * container. A browser's {@code EventSource} pointed at the endpoint receives
+ * each intercepted event as an SSE event named after its level. Connections
+ * can filter with query parameters:
+ * <ul>
+ * <li>{@code level} - the lowest level to send, e.g. {@code ?level=WARN}</li>
+ * <li>{@code logger} - logger name prefixes to send, comma separated, e.g.
+ * {@code ?logger=com.example.db,com.example.web}</li>
+ * </ul>
+ * <p>
+ * Events from the source are fanned out to one bounded queue per connection
+ * and written in batches, one write and flush per batch. A connection whose
+ * queue fills, because its client is not keeping up, is dropped rather than
+ * allowed to back up the interceptor, its exchange closed at once so that a
+ * write blocked on the client fails.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class SseServer
+        implements AutoCloseable
+{
+
+    /**
+     * Default endpoint path
+     */
+    public static final String DEFAULT_PATH = "/events";
+
+    /**
+     * Default most events per write
+     */
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    /**
+     * Default events queued per connection before it is dropped
+     */
+    public static final int DEFAULT_CONNECTION_QUEUE = 4096;
+
+    /**
+     * Server thread numbering
+     */
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    /**
+     * The HTTP server
+     */
+    private final HttpServer server;
+
+    /**
+     * Executor for HTTP exchanges and connection writes
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Per connection fan out of the source events
+     */
+    private final BackpressurePublisher<InterceptedEvent> connections;
+
+    /**
+     * Subscriber to the source events
+     */
+    private final Source source = new Source();
+
+    /**
+     * Most events per write
+     */
+    private final int maxBatch;
+
+    /**
+     * Connections dropped for falling behind
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+
+    /**
+     * Creates a server with default path, batch and queue sizes
+     *
+     * @param address
+     *            the address to listen on
+     * @param events
+     *            the intercepted events, e.g. from
+     *            {@code Interceptor.getEventPublisher()}
+     * @throws IOException
+     *             if the server cannot bind
+     */
+    public SseServer(InetSocketAddress address,
+            Flow.Publisher<InterceptedEvent> events) throws IOException
+    {
+        this(address, DEFAULT_PATH, events, DEFAULT_MAX_BATCH,
+                DEFAULT_CONNECTION_QUEUE);
+    }
+
+
+    /**
+     * Creates a server
+     *
+     * @param address
+     *            the address to listen on
+     * @param path
+     *            the endpoint path
+     * @param events
+     *            the intercepted events, e.g. from
+     *            {@code Interceptor.getEventPublisher()}
+     * @param maxBatch
+     *            the most events per write to a connection
+     * @param connectionQueue
+     *            the events queued per connection before it is dropped
+     * @throws IOException
+     *             if the server cannot bind
+     */
+    public SseServer(InetSocketAddress address, String path,
+            Flow.Publisher<InterceptedEvent> events, int maxBatch,
+            int connectionQueue) throws IOException
+    {
+        this.maxBatch = maxBatch;
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread =
+                    new Thread(r, "SseServer-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        connections = new BackpressurePublisher<>(executor, connectionQueue,
+                OverflowPolicy.DISCONNECT)
+        {
+            @Override
+            protected void disconnected(Flow.Subscriber<?> subscriber)
+            {
+                if (subscriber instanceof SseConnection)
+                    drop((SseConnection) subscriber);
+            }
+        };
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+        events.subscribe(source);
+    }
+
+
+    /**
+     * Starts serving
+     *
+     * @return this server
+     */
+    public SseServer start()
+    {
+        server.start();
+        return this;
+    }
+
+
+    /**
+     * Returns the address the server is bound to
+     *
+     * @return the address
+     */
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }
+
+
+    /**
+     * Returns the number of open connections
+     *
+     * @return the connection count
+     */
+    public int getConnectionCount()
+    {
+        return connections.getSubscriberCount();
+    }
+
+
+    /**
+     * Returns the number of connections dropped for falling behind
+     *
+     * @return the dropped connection count
+     */
+    public long getDroppedConnections()
+    {
+        return dropped.get();
+    }
+
+
+    /**
+     * Stops the server, ending every connection
+     */
+    @Override
+    public void close()
+    {
+        source.cancel();
+        connections.close();
+        server.stop(1); // lets completing connections end their responses
+        executor.shutdownNow();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Drops a connection that has fallen behind, off the submitting thread as
+     * closing the exchange may wait on the client
+     *
+     * @param connection
+     *            the connection
+     */
+    private void drop(SseConnection connection)
+    {
+        try
+        {
+            executor.execute(connection::drop);
+        }
+        catch (RejectedExecutionException e)
+        /*
+         * Server stopping, which closes the connection
+         */
+        {
+        }
+    }
+
+
+    /**
+     * Opens an event stream
+     *
+     * @param exchange
+     *            the HTTP exchange
+     * @throws IOException
+     *             writing the response
+     */
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        if (!"GET".equals(exchange.getRequestMethod()))
+        {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+
+        LogLevel level = LogLevel.TRACE;
+        String[] loggers = new String[0];
+        String query = exchange.getRequestURI().getRawQuery();
+        try
+        {
+            for (String param : query == null ? new String[0]
+                    : query.split("&"))
+            {
+                int eq = param.indexOf('=');
+                String name = eq < 0 ? param : param.substring(0, eq);
+                String value = eq < 0 ? ""
+                        : URLDecoder.decode(param.substring(eq + 1),
+                                StandardCharsets.UTF_8);
+                if ("level".equals(name))
+                    level = LogLevel.valueOf(value.toUpperCase(Locale.ROOT));
+                else if ("logger".equals(name) && !value.isEmpty())
+                    loggers = value.split(",");
+            }
+        }
+        catch (IllegalArgumentException e)
+        /*
+         * Unknown level or bad encoding
+         */
+        {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        body.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+        body.flush();
+
+        connections.batches(maxBatch).subscribe(
+                new SseConnection(exchange, level, loggers, dropped));
+    }
+
+
+    /**
+     * Subscriber to the source events, handing them to the connections
+     */
+    private final class Source
+            implements Flow.Subscriber<InterceptedEvent>
+    {
+
+        /**
+         * The source subscription
+         */
+        private volatile Flow.Subscription subscription;
+
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+
+        @Override
+        public void onNext(InterceptedEvent event)
+        {
+            if (connections.hasSubscribers())
+                connections.submit(event);
+        }
+
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            connections.close();
+        }
+
+
+        @Override
+        public void onComplete()
+        {
+            connections.close();
+        }
+
+
+        /**
+         * Cancels the source subscription
+         */
+        void cancel()
+        {
+            Flow.Subscription s = subscription;
+            if (s != null)
+                s.cancel();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+import com.github.technosf.slf4.interceptor.LogLevel;
+import com.github.technosf.slf4.interceptor.util.AsyncOutputStream.OverflowPolicy;
+import com.github.technosf.slf4.interceptor.util.BackpressurePublisher;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class SseServerTest
+{
+
+    @Test
+    public void stream() throws IOException, InterruptedException
+    {
+        BackpressurePublisher<InterceptedEvent> events =
+                new BackpressurePublisher<>(Runnable::run, 16,
+                        OverflowPolicy.DROP_OLDEST);
+        SseServer server = new SseServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                events).start();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://"
+                + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort()
+                + "/events?level=warn&logger=com.a").openConnection();
+        assertEquals(connection.getResponseCode(), 200);
+        assertEquals(connection.getContentType(),
+                "text/event-stream; charset=utf-8");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                connection.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals(reader.readLine(), ": connected");
+        assertEquals(reader.readLine(), "");
+        while (server.getConnectionCount() == 0)
+            Thread.sleep(10);
+
+        events.submit(new InterceptedEvent(LogLevel.INFO, "com.a", "quiet",
+                0, null));
+        events.submit(new InterceptedEvent(LogLevel.ERROR, "com.b", "other",
+                0, null));
+        events.submit(new InterceptedEvent(LogLevel.ERROR, "com.a.X",
+                "boom\nsecond", 0, null));
+
+        assertEquals(reader.readLine(), "event: ERROR");
+        assertEquals(reader.readLine(), "data: 0 com.a.X - boom");
+        assertEquals(reader.readLine(), "data: second");
+        assertEquals(reader.readLine(), "");
+
+        server.close();
+        assertNull(reader.readLine());
+    }
+
+
+    @Test
+    public void level() throws IOException
+    {
+        BackpressurePublisher<InterceptedEvent> events =
+                new BackpressurePublisher<>(Runnable::run, 16,
+                        OverflowPolicy.DROP_OLDEST);
+        SseServer server = new SseServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                events).start();
+        String base = "http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/events?level=";
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try
+        {
+            HttpURLConnection bad =
+                    (HttpURLConnection) new URL(base + "loud").openConnection();
+            assertEquals(bad.getResponseCode(), 400);
+
+            HttpURLConnection info =
+                    (HttpURLConnection) new URL(base + "info").openConnection();
+            assertEquals(info.getResponseCode(), 200);
+            info.disconnect();
+        }
+        finally
+        {
+            Locale.setDefault(locale);
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.technosf.slf4.interceptor.base.AbstractInterceptor;
+import com.github.technosf.slf4.interceptor.util.LineScanner;
+import com.github.technosf.slf4.interceptor.util.MultiplexOutputStream;
+
+/**
+ * Captures a console stream into the interceptor pipeline
+ * <p>
+ * Output printed to the capture's {@code PrintStream} goes through a
+ * {@code MultiplexOutputStream} to the original console stream, which is kept
+ * as a subscriber, and to a line splitter that logs each line through a
+ * {@code LoggerInterceptor} at a configured level. Lines are found in place
+ * with {@code LineScanner}; a line is only copied if it spans writes, and only
+ * decoded to a {@code String} if the event will be logged or intercepted.
+ * <p>
+ * Output is published to the console as soon as it is flushed, terminated or
+ * not, so prompts, progress bars and carriage return updates show at once.
+ * Only the line splitter holds back an unterminated line, until its end is
+ * written or the capture is closed.
+ * <p>
+ * Anything the logging pipeline itself prints to a captured stream, while
+ * handling a captured line, goes straight to the console, so a backend
+ * logging to the console does not feed back into the capture.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class ConsoleCapture
+        implements AutoCloseable
+{
+
+    /**
+     * Set while this thread is logging a captured line
+     */
+    private static final ThreadLocal<Boolean> DISPATCHING =
+            ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * The original console stream
+     */
+    private final PrintStream console;
+
+    /**
+     * The multiplexer fanning output to the console and the line splitter
+     */
+    private final MultiplexOutputStream multiplex;
+
+    /**
+     * The line splitter
+     */
+    private final LineSink lines;
+
+    /**
+     * The stream replacing the console stream
+     */
+    private final PrintStream printStream;
+
+    /**
+     * Setter restoring the console stream on close, if installed
+     */
+    private volatile Consumer<PrintStream> installed;
+
+
+    /**
+     * Creates a capture of a console stream, without installing it
+     *
+     * @param console
+     *            the console stream
+     * @param level
+     *            the level to log captured lines at
+     * @param loggerName
+     *            the pseudo-logger name to log captured lines under
+     */
+    public ConsoleCapture(PrintStream console, LogLevel level,
+            String loggerName)
+    {
+        this(console, level, LoggerFactory.getLogger(loggerName),
+                Charset.defaultCharset());
+    }
+
+
+    /**
+     * Creates a capture of a console stream, without installing it
+     *
+     * @param console
+     *            the console stream
+     * @param level
+     *            the level to log captured lines at
+     * @param logger
+     *            the logger to log captured lines to
+     * @param charset
+     *            the charset of the console output
+     */
+    public ConsoleCapture(PrintStream console, LogLevel level, Logger logger,
+            Charset charset)
+    {
+        this.console = console;
+        lines = new LineSink(level, logger instanceof Interceptor
+                ? logger
+                : new LoggerInterceptor(logger), charset);
+        multiplex = new MultiplexOutputStream(console);
+        multiplex.addOutputStreams(lines);
+        printStream = new PrintStream(new Guard(), true, charset);
+    }
+
+
+    /**
+     * Replaces {@code System.out} with a capture
+     *
+     * @param level
+     *            the level to log captured lines at
+     * @param loggerName
+     *            the pseudo-logger name to log captured lines under
+     * @return the installed capture
+     */
+    public static ConsoleCapture captureOut(LogLevel level, String loggerName)
+    {
+        ConsoleCapture capture =
+                new ConsoleCapture(System.out, level, loggerName);
+        capture.installed = System::setOut;
+        System.setOut(capture.printStream);
+        return capture;
+    }
+
+
+    /**
+     * Replaces {@code System.err} with a capture
+     *
+     * @param level
+     *            the level to log captured lines at
+     * @param loggerName
+     *            the pseudo-logger name to log captured lines under
+     * @return the installed capture
+     */
+    public static ConsoleCapture captureErr(LogLevel level, String loggerName)
+    {
+        ConsoleCapture capture =
+                new ConsoleCapture(System.err, level, loggerName);
+        capture.installed = System::setErr;
+        System.setErr(capture.printStream);
+        return capture;
+    }
+
+
+    /**
+     * Returns the stream replacing the console stream
+     *
+     * @return the capturing print stream
+     */
+    public PrintStream getPrintStream()
+    {
+        return printStream;
+    }
+
+
+    /**
+     * Returns the original console stream
+     *
+     * @return the console stream
+     */
+    public PrintStream getConsole()
+    {
+        return console;
+    }
+
+
+    /**
+     * Returns the multiplexer, so further subscribers can be added
+     *
+     * @return the multiplexer
+     */
+    public MultiplexOutputStream getMultiplexOutputStream()
+    {
+        return multiplex;
+    }
+
+
+    /**
+     * Flushes the capture, logs any unterminated last line, and restores the
+     * console stream if this capture was installed. The console stream itself
+     * is left open.
+     */
+    @Override
+    public void close()
+    {
+        printStream.flush();
+        Consumer<PrintStream> setter = installed;
+        installed = null;
+        if (setter != null)
+            setter.accept(console);
+        multiplex.removeOutputStreams(lines);
+        lines.close();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Routes writes to the multiplexer, or straight to the console while the
+     * writing thread is logging a captured line
+     */
+    private final class Guard
+            extends OutputStream
+    {
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (DISPATCHING.get())
+                console.write(b);
+            else
+                multiplex.write(b);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (DISPATCHING.get())
+                console.write(b, off, len);
+            else
+                multiplex.write(b, off, len);
+        }
+
+
+        @Override
+        public void flush() throws IOException
+        {
+            if (DISPATCHING.get())
+                console.flush();
+            else
+                multiplex.flush();
+        }
+    }
+
+
+    /**
+     * Splits published output into lines and logs them
+     * <p>
+     * Only written to by the multiplexer's flushing thread.
+     */
+    private static final class LineSink
+            extends OutputStream
+    {
+
+        /**
+         * Carriage return
+         */
+        private static final byte CR = 13;
+
+        /**
+         * The level to log at
+         */
+        private final LogLevel level;
+
+        /**
+         * The intercepting logger
+         */
+        private final Logger logger;
+
+        /**
+         * The charset to decode lines with
+         */
+        private final Charset charset;
+
+        /**
+         * Start of a line left unterminated by earlier writes
+         */
+        private byte[] carry = new byte[256];
+
+        /**
+         * Number of bytes carried
+         */
+        private int carried;
+
+
+        /**
+         * @param level
+         *            the level to log at
+         * @param logger
+         *            the intercepting logger
+         * @param charset
+         *            the charset to decode lines with
+         */
+        LineSink(LogLevel level, Logger logger, Charset charset)
+        {
+            this.level = level;
+            this.logger = logger;
+            this.charset = charset;
+        }
+
+
+        @Override
+        public void write(int b)
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            for (int end = off + len; off < end;)
+            {
+                int lf = LineScanner.indexOf(b, off, end);
+                if (lf < 0)
+                /*
+                 * Unterminated, keep for the next write
+                 */
+                {
+                    carry(b, off, end - off);
+                    return;
+                }
+
+                if (carried == 0)
+                {
+                    dispatch(b, off, lf - off);
+                }
+                else
+                {
+                    carry(b, off, lf - off);
+                    dispatch(carry, 0, carried);
+                    carried = 0;
+                }
+                off = lf + 1;
+            }
+        }
+
+
+        /**
+         * Logs any unterminated line
+         */
+        @Override
+        public void close()
+        {
+            if (carried > 0)
+                dispatch(carry, 0, carried);
+            carried = 0;
+        }
+
+
+        /**
+         * Appends to the carried line
+         */
+        private void carry(byte[] b, int off, int len)
+        {
+            if (carried + len > carry.length)
+                carry = Arrays.copyOf(carry,
+                        Math.max(carried + len, carry.length << 1));
+            System.arraycopy(b, off, carry, carried, len);
+            carried += len;
+        }
+
+
+        /**
+         * Logs a line, decoding it only if it will be logged or intercepted
+         */
+        private void dispatch(byte[] b, int off, int len)
+        {
+            if (len > 0 && b[off + len - 1] == CR)
+                len--;
+            if (len == 0
+                    || !(AbstractInterceptor.getInterceptorMode().logToInterceptor
+                            || level.isEnabled(logger)))
+                return;
+
+            DISPATCHING.set(Boolean.TRUE);
+            try
+            {
+                level.log(logger, new String(b, off, len, charset));
+            }
+            catch (RuntimeException e)
+            /*
+             * A failing backend must not stop console output
+             */
+            {
+            }
+            finally
+            {
+                DISPATCHING.set(Boolean.FALSE);
+            }
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Formatting and filtering cost per format string
+ * <p>
+ * Accumulates call counts and the nanoseconds spent formatting messages and
+ * matching them against the filter, keyed by the identity of the format
+ * string. Time writing to the sinks is left out, being I/O rather than the
+ * cost of the call site. Format strings are usually literals, so each call
+ * site's format is one instance and identity lookups avoid hashing or
+ * comparing the string.
+ * <p>
+ * Costs are held in an open addressed table that slots are claimed in by
+ * compare-and-set, and accumulated in {@code LongAdder}s, so recording
+ * threads never lock. The table has a fixed size: once it is full, or a
+ * format string's probe sequence is, costs are accumulated as untracked.
+ * Messages logged without a format, built by concatenation say, are usually
+ * a new string on every call, so rather than each take a slot they are
+ * accumulated together as unformatted.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class FormatProfiler
+{
+
+    /**
+     * Default number of format strings tracked
+     */
+    public static final int DEFAULT_FORMATS = 1024;
+
+    /**
+     * Slots probed for a format string before it is untracked
+     */
+    private static final int MAX_PROBES = 16;
+
+    /**
+     * Format string costs, twice the size of the formats tracked
+     */
+    private final AtomicReferenceArray<Cost> table;
+
+    /**
+     * Index mask of {@code table}
+     */
+    private final int mask;
+
+    /**
+     * Costs of format strings not tracked
+     */
+    private final Cost untracked = new Cost(null, "<untracked>");
+
+    /**
+     * Costs of messages logged without a format
+     */
+    private final Cost unformatted = new Cost(null, "<unformatted>");
+
+
+    /**
+     * Creates a profiler tracking {@code DEFAULT_FORMATS} format strings
+     */
+    public FormatProfiler()
+    {
+        this(DEFAULT_FORMATS);
+    }
+
+
+    /**
+     * Creates a profiler
+     *
+     * @param formats
+     *            the number of format strings to track
+     * @throws IllegalArgumentException
+     *             if {@code formats} is not between 1 and 2^29
+     */
+    public FormatProfiler(int formats)
+    {
+        if (formats <= 0 || formats > 1 << 29)
+            throw new IllegalArgumentException(
+                    "Formats must be between 1 and 2^29: " + formats);
+        int size = Integer.highestOneBit(formats * 2 - 1) << 1;
+        table = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+
+    /**
+     * Records the cost of a log call
+     *
+     * @param format
+     *            the format string, or message if not formatted
+     * @param formatNanos
+     *            the time formatting the message
+     * @param filterNanos
+     *            the time matching the message against the filter
+     */
+    public void record(String format, long formatNanos, long filterNanos)
+    {
+        (format == null ? untracked : cost(format)).add(formatNanos,
+                filterNanos);
+    }
+
+
+    /**
+     * Records the cost of a log call without a format string
+     *
+     * @param filterNanos
+     *            the time matching the message against the filter
+     */
+    public void recordUnformatted(long filterNanos)
+    {
+        unformatted.add(0, filterNanos);
+    }
+
+
+    /**
+     * Returns the most costly format strings, with unformatted messages
+     * ranked as one format string if any were logged
+     *
+     * @param n
+     *            the number of format strings to return
+     * @return up to {@code n} format strings, most total nanoseconds first,
+     *         none if {@code n} is not positive
+     */
+    public List<Entry> getTop(int n)
+    {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < table.length(); i++)
+        {
+            Cost cost = table.get(i);
+            if (cost != null)
+                entries.add(cost.entry());
+        }
+        Entry messages = unformatted.entry();
+        if (messages.getCalls() > 0)
+            entries.add(messages);
+        entries.sort(Comparator.comparingLong(Entry::getTotalNanos)
+                .reversed());
+        return entries.subList(0, Math.max(0, Math.min(n, entries.size())));
+    }
+
+
+    /**
+     * Returns the cost of format strings not tracked, with a null format
+     *
+     * @return the untracked cost
+     */
+    public Entry getUntracked()
+    {
+        return untracked.entry();
+    }
+
+
+    /**
+     * Returns the cost of messages logged without a format, with a null
+     * format
+     *
+     * @return the unformatted cost
+     */
+    public Entry getUnformatted()
+    {
+        return unformatted.entry();
+    }
+
+
+    /**
+     * Clears the profile. Recordings made while clearing may be lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < table.length(); i++)
+            table.set(i, null);
+        untracked.reset();
+        unformatted.reset();
+    }
+
+
+    /**
+     * Finds or claims the slot of a format string
+     *
+     * @param format
+     *            the format string
+     * @return the cost of the format string, or the untracked cost
+     */
+    private Cost cost(String format)
+    {
+        int h = System.identityHashCode(format);
+        int i = (h ^ (h >>> 16)) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++)
+        {
+            Cost cost = table.get(i);
+            if (cost == null)
+            {
+                Cost claimed = new Cost(format, null);
+                if (table.compareAndSet(i, null, claimed))
+                    return claimed;
+                cost = table.get(i);
+            }
+            if (cost != null && cost.format == format)
+                return cost;
+            i = (i + 1) & mask;
+        }
+        return untracked;
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Accumulated cost of a format string
+     */
+    private static final class Cost
+    {
+
+        /**
+         * The format string
+         */
+        final String format;
+
+        /**
+         * The name shown for a null format string
+         */
+        final String label;
+
+        /**
+         * Calls, formatting time and filter time
+         */
+        final LongAdder calls = new LongAdder(),
+                formatNanos = new LongAdder(), filterNanos = new LongAdder();
+
+
+        /**
+         * @param format
+         *            the format string
+         * @param label
+         *            the name shown for a null format string
+         */
+        Cost(String format, String label)
+        {
+            this.format = format;
+            this.label = label;
+        }
+
+
+        /**
+         * Adds a call
+         *
+         * @param formatNanos
+         *            the time formatting
+         * @param filterNanos
+         *            the time matching the filter
+         */
+        void add(long formatNanos, long filterNanos)
+        {
+            calls.increment();
+            this.formatNanos.add(formatNanos);
+            this.filterNanos.add(filterNanos);
+        }
+
+
+        /**
+         * Clears the cost
+         */
+        void reset()
+        {
+            calls.reset();
+            formatNanos.reset();
+            filterNanos.reset();
+        }
+
+
+        /**
+         * @return a snapshot of the cost
+         */
+        Entry entry()
+        {
+            return new Entry(format, label, calls.sum(), formatNanos.sum(),
+                    filterNanos.sum());
+        }
+    }
+
+
+    /**
+     * Immutable snapshot of the cost of a format string
+     */
+    public static final class Entry
+    {
+
+        /**
+         * The format string
+         */
+        private final String format;
+
+        /**
+         * The name shown for a null format string
+         */
+        private final String label;
+
+        /**
+         * Calls, formatting time and filter time
+         */
+        private final long calls, formatNanos, filterNanos;
+
+
+        /**
+         * @param format
+         *            the format string
+         * @param label
+         *            the name shown for a null format string
+         * @param calls
+         *            the calls
+         * @param formatNanos
+         *            the time formatting
+         * @param filterNanos
+         *            the time matching the filter
+         */
+        Entry(String format, String label, long calls, long formatNanos,
+                long filterNanos)
+        {
+            this.format = format;
+            this.label = label;
+            this.calls = calls;
+            this.formatNanos = formatNanos;
+            this.filterNanos = filterNanos;
+        }
+
+
+        /**
+         * @return the format string, null for untracked format strings and
+         *         unformatted messages
+         */
+        public String getFormat()
+        {
+            return format;
+        }
+
+
+        /**
+         * @return the number of calls
+         */
+        public long getCalls()
+        {
+            return calls;
+        }
+
+
+        /**
+         * @return the nanoseconds formatting messages
+         */
+        public long getFormatNanos()
+        {
+            return formatNanos;
+        }
+
+
+        /**
+         * @return the nanoseconds matching messages against the filter
+         */
+        public long getFilterNanos()
+        {
+            return filterNanos;
+        }
+
+
+        /**
+         * @return the total nanoseconds
+         */
+        public long getTotalNanos()
+        {
+            return formatNanos + filterNanos;
+        }
+
+
+        /**
+         * @return the mean nanoseconds per call, zero if none
+         */
+        public double getMeanNanos()
+        {
+            return calls == 0 ? 0 : (double) getTotalNanos() / calls;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return String.format("%s calls=%d format=%dns filter=%dns",
+                    format == null ? label : '"' + format + '"',
+                    calls, formatNanos, filterNanos);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import com.github.technosf.slf4.interceptor.util.SpaceSaving;
+
+/**
+ * The noisiest loggers and format strings
+ * <p>
+ * Tracks the loggers and format strings of log calls through interceptors in
+ * {@code SpaceSaving} sketches, each with a fixed number of counters, so the
+ * top sources can be read at any time without stopping logging threads.
+ * <p>
+ * Messages logged without a format, built by concatenation say, are usually
+ * a new string on every call, so rather than each take, and evict, a
+ * counter of their own they are counted together as {@code UNFORMATTED}.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class HeavyHitters
+{
+
+    /**
+     * The format string key counting messages logged without a format
+     */
+    public static final String UNFORMATTED = "<unformatted>";
+
+    /**
+     * Logger names
+     */
+    private final SpaceSaving<String> loggers;
+
+    /**
+     * Format strings, and {@code UNFORMATTED}
+     */
+    private final SpaceSaving<String> formats;
+
+
+    /**
+     * Creates empty trackers
+     *
+     * @param capacity
+     *            the number of loggers and of format strings to count
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is not between 1 and 2^30
+     */
+    public HeavyHitters(int capacity)
+    {
+        loggers = new SpaceSaving<>(capacity);
+        formats = new SpaceSaving<>(capacity);
+    }
+
+
+    /**
+     * Counts a log call
+     *
+     * @param logger
+     *            the logger name
+     * @param format
+     *            the format string, or null if not formatted
+     */
+    public void record(String logger, String format)
+    {
+        if (logger != null)
+            loggers.offer(logger);
+        formats.offer(format == null ? UNFORMATTED : format);
+    }
+
+
+    /**
+     * @return the logger name tracker
+     */
+    public SpaceSaving<String> getLoggers()
+    {
+        return loggers;
+    }
+
+
+    /**
+     * @return the format string tracker
+     */
+    public SpaceSaving<String> getFormats()
+    {
+        return formats;
+    }
+
+
+    /**
+     * Clears the trackers. Calls counted while clearing may be lost.
+     */
+    public void reset()
+    {
+        loggers.reset();
+        formats.reset();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+/**
+ * An intercepted log call, with its message formatted
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class InterceptedEvent
+{
+
+    /**
+     * The log level
+     */
+    private final LogLevel level;
+
+    /**
+     * The name of the logger logged to
+     */
+    private final String loggerName;
+
+    /**
+     * The formatted message
+     */
+    private final String message;
+
+    /**
+     * When intercepted, in milliseconds since the epoch
+     */
+    private final long timestamp;
+
+    /**
+     * The throwable logged, or null
+     */
+    private final Throwable throwable;
+
+
+    /**
+     * @param level
+     *            the log level
+     * @param loggerName
+     *            the name of the logger logged to
+     * @param message
+     *            the formatted message
+     * @param timestamp
+     *            when intercepted, in milliseconds since the epoch
+     * @param throwable
+     *            the throwable logged, or null
+     */
+    public InterceptedEvent(LogLevel level, String loggerName, String message,
+            long timestamp, Throwable throwable)
+    {
+        this.level = level;
+        this.loggerName = loggerName;
+        this.message = message;
+        this.timestamp = timestamp;
+        this.throwable = throwable;
+    }
+
+
+    /**
+     * @return the log level
+     */
+    public LogLevel getLevel()
+    {
+        return level;
+    }
+
+
+    /**
+     * @return the name of the logger logged to
+     */
+    public String getLoggerName()
+    {
+        return loggerName;
+    }
+
+
+    /**
+     * @return the formatted message
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+
+
+    /**
+     * @return when intercepted, in milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+
+    /**
+     * @return the throwable logged, or null
+     */
+    public Throwable getThrowable()
+    {
+        return throwable;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return timestamp + " " + level + " " + loggerName + " - " + message
+                + (throwable == null ? "" : " " + throwable);
+    }
+}
@@ -16,6 +16,8 @@
 package com.github.technosf.slf4.interceptor;
 
 import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Flow;
 
 import org.slf4j.Logger;
 import org.slf4j.Marker;
@@ -131,6 +133,41 @@ public interface Interceptor
     void setOutputStream(OutputStream outputStream);
 
 
+    /**
+     * Returns a publisher of intercepted events, delivering events as far as
+     * each subscriber has requested them
+     * <p>
+     * Interceptors that do not publish events need not implement this.
+     * 
+     * @return the event publisher
+     * @throws UnsupportedOperationException
+     *             if the interceptor does not publish events
+     */
+    default Flow.Publisher<InterceptedEvent> getEventPublisher()
+    {
+        throw new UnsupportedOperationException("Events not published");
+    }
+
+
+    /**
+     * Returns a publisher of batches of intercepted events, each batch
+     * counting as one item of subscriber demand
+     * <p>
+     * Interceptors that do not publish events need not implement this.
+     * 
+     * @param maxBatch
+     *            the most events in a batch
+     * @return the batching event publisher
+     * @throws UnsupportedOperationException
+     *             if the interceptor does not publish events
+     */
+    default Flow.Publisher<List<InterceptedEvent>> getEventPublisher(
+            int maxBatch)
+    {
+        throw new UnsupportedOperationException("Events not published");
+    }
+
+
     /* ---------------------------------------------------------------- */
 
     /**
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.technosf.slf4.interceptor.util.LatencyHistogram;
+
+/**
+ * Interception counts and latencies
+ * <p>
+ * Counts intercepted log calls per {@code LogLevel} and {@code Outcome} in
+ * {@code LongAdder}s, and records the latency of each {@code intercept} call
+ * and of writing each intercepted message to the interceptor's sinks in
+ * {@code LatencyHistogram}s, so recording threads rarely contend. Readers
+ * take a {@code Snapshot}.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class InterceptorMetrics
+{
+
+    /**
+     * What became of an intercepted log call
+     */
+    public enum Outcome {
+
+        /**
+         * Neither intercepted nor logged
+         */
+        ABSORBED,
+
+        /**
+         * Logged without being intercepted
+         */
+        PASSED,
+
+        /**
+         * Intercepted and withheld from the logger by the filter
+         */
+        FILTERED,
+
+        /**
+         * Intercepted and logged
+         */
+        DUPLICATED;
+
+        /**
+         * Returns the outcome of a log call
+         *
+         * @param intercepted
+         *            true if the message went to the interceptor
+         * @param logged
+         *            true if the message went to the logger
+         * @return the outcome
+         */
+        public static Outcome of(boolean intercepted, boolean logged)
+        {
+            if (intercepted)
+                return logged ? DUPLICATED : FILTERED;
+            return logged ? PASSED : ABSORBED;
+        }
+    }
+
+    /**
+     * Cached level values
+     */
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    /**
+     * Cached outcome values
+     */
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    /**
+     * Counts indexed by level and outcome
+     */
+    private final LongAdder[] counts =
+            new LongAdder[LEVELS.length * OUTCOMES.length];
+
+    /**
+     * Latency of {@code intercept} calls
+     */
+    private final LatencyHistogram interceptLatency = new LatencyHistogram();
+
+    /**
+     * Latency of writing intercepted messages to sinks
+     */
+    private final LatencyHistogram sinkLatency = new LatencyHistogram();
+
+
+    /**
+     * Creates empty metrics
+     */
+    public InterceptorMetrics()
+    {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = new LongAdder();
+    }
+
+
+    /**
+     * Records an intercepted log call
+     *
+     * @param level
+     *            the log level
+     * @param outcome
+     *            what became of the call
+     * @param nanos
+     *            the duration of the {@code intercept} call
+     */
+    public void recordIntercept(LogLevel level, Outcome outcome, long nanos)
+    {
+        counts[level.ordinal() * OUTCOMES.length + outcome.ordinal()]
+                .increment();
+        interceptLatency.record(nanos);
+    }
+
+
+    /**
+     * Records the writing of an intercepted message to the sinks
+     *
+     * @param nanos
+     *            the duration of the writes
+     */
+    public void recordSink(long nanos)
+    {
+        sinkLatency.record(nanos);
+    }
+
+
+    /**
+     * Returns a snapshot of the metrics
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot()
+    {
+        long[] values = new long[counts.length];
+        for (int i = 0; i < counts.length; i++)
+            values[i] = counts[i].sum();
+        return new Snapshot(values, interceptLatency.snapshot(),
+                sinkLatency.snapshot());
+    }
+
+
+    /**
+     * Clears the metrics. Recordings made while clearing may be lost.
+     */
+    public void reset()
+    {
+        for (LongAdder count : counts)
+            count.reset();
+        interceptLatency.reset();
+        sinkLatency.reset();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Immutable snapshot of interceptor metrics
+     */
+    public static final class Snapshot
+    {
+
+        /**
+         * Counts indexed by level and outcome
+         */
+        private final long[] counts;
+
+        /**
+         * Latency of {@code intercept} calls
+         */
+        private final LatencyHistogram.Snapshot interceptLatency;
+
+        /**
+         * Latency of sink writes
+         */
+        private final LatencyHistogram.Snapshot sinkLatency;
+
+
+        /**
+         * @param counts
+         *            counts indexed by level and outcome
+         * @param interceptLatency
+         *            latency of {@code intercept} calls
+         * @param sinkLatency
+         *            latency of sink writes
+         */
+        Snapshot(long[] counts, LatencyHistogram.Snapshot interceptLatency,
+                LatencyHistogram.Snapshot sinkLatency)
+        {
+            this.counts = counts;
+            this.interceptLatency = interceptLatency;
+            this.sinkLatency = sinkLatency;
+        }
+
+
+        /**
+         * Returns the count of calls at a level with an outcome
+         *
+         * @param level
+         *            the level
+         * @param outcome
+         *            the outcome
+         * @return the count
+         */
+        public long getCount(LogLevel level, Outcome outcome)
+        {
+            return counts[level.ordinal() * OUTCOMES.length
+                    + outcome.ordinal()];
+        }
+
+
+        /**
+         * Returns the count of calls at a level
+         *
+         * @param level
+         *            the level
+         * @return the count
+         */
+        public long getCount(LogLevel level)
+        {
+            long n = 0;
+            for (Outcome outcome : OUTCOMES)
+                n += getCount(level, outcome);
+            return n;
+        }
+
+
+        /**
+         * Returns the count of calls with an outcome
+         *
+         * @param outcome
+         *            the outcome
+         * @return the count
+         */
+        public long getCount(Outcome outcome)
+        {
+            long n = 0;
+            for (LogLevel level : LEVELS)
+                n += getCount(level, outcome);
+            return n;
+        }
+
+
+        /**
+         * @return the count of all calls
+         */
+        public long getTotal()
+        {
+            long n = 0;
+            for (long count : counts)
+                n += count;
+            return n;
+        }
+
+
+        /**
+         * @return the latency of {@code intercept} calls
+         */
+        public LatencyHistogram.Snapshot getInterceptLatency()
+        {
+            return interceptLatency;
+        }
+
+
+        /**
+         * @return the latency of writing intercepted messages to sinks
+         */
+        public LatencyHistogram.Snapshot getSinkLatency()
+        {
+            return sinkLatency;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            for (Outcome outcome : OUTCOMES)
+                sb.append(outcome).append('=').append(getCount(outcome))
+                        .append(' ');
+            return sb.append("intercept[").append(interceptLatency)
+                    .append("] sink[").append(sinkLatency).append(']')
+                    .toString();
+        }
+    }
+}
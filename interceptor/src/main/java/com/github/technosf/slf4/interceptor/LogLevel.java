@@ -51,6 +51,32 @@ public enum LogLevel {
     }
 
 
+    /**
+     * Is the logger enabled at this level
+     * 
+     * @param log
+     * @return true if the logger is enabled
+     */
+    public final boolean isEnabled(Logger log)
+    {
+        switch (this)
+        {
+            case TRACE:
+                return log.isTraceEnabled();
+            case DEBUG:
+                return log.isDebugEnabled();
+            case INFO:
+                return log.isInfoEnabled();
+            case WARN:
+                return log.isWarnEnabled();
+            case ERROR:
+                return log.isErrorEnabled();
+            default:
+                return false;
+        }
+    }
+
+
     /**
      * Log with the logger
      * 
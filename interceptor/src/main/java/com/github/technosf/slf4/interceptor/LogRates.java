@@ -0,0 +1,441 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import com.github.technosf.slf4.interceptor.util.RateSeries;
+
+/**
+ * Log call counts over time, per logger and level
+ * <p>
+ * Counts log calls through interceptors in fixed width time buckets, one
+ * second wide by default, over a history window. Each logger has a
+ * {@code RateSeries}, a circular array of packed counters per bucket and
+ * level, and a further series counts all loggers. Recording and reading are
+ * both lock-free, so rates such as errors per second over the last ten
+ * minutes can be read while logging carries on.
+ * <p>
+ * Each logger counted holds {@code 8 * (buckets + 1) * levels} bytes, about
+ * 24KB for ten minutes of one second buckets, for as long as the rates are
+ * kept. So that loggers created per request, say, cannot grow that without
+ * bound, at most a given number of loggers are counted; calls on loggers
+ * beyond them are counted only for all loggers.
+ * <p>
+ * Counts and rates are over whole buckets before the current, partly
+ * elapsed one, so a rate over the last minute of one second buckets covers
+ * the sixty seconds before the current second.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class LogRates
+{
+
+    /**
+     * Cached level values
+     */
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    /**
+     * Default most loggers counted
+     */
+    public static final int DEFAULT_LOGGERS = 256;
+
+    /**
+     * Bucket width in milliseconds
+     */
+    private final long width;
+
+    /**
+     * Whole buckets in the history window
+     */
+    private final int window;
+
+    /**
+     * Most loggers counted
+     */
+    private final int maxLoggers;
+
+    /**
+     * Clock, in milliseconds since the epoch
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Counts for all loggers
+     */
+    private final RateSeries total;
+
+    /**
+     * Counts per logger name
+     */
+    private final ConcurrentHashMap<String, RateSeries> loggers =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Loggers counted, or being added
+     */
+    private final AtomicInteger tracked = new AtomicInteger();
+
+
+    /**
+     * Creates empty rates with one second buckets, counting up to
+     * {@code DEFAULT_LOGGERS} loggers
+     *
+     * @param history
+     *            the history window
+     * @param unit
+     *            the unit of {@code history}
+     * @throws IllegalArgumentException
+     *             if the history is less than a second
+     */
+    public LogRates(long history, TimeUnit unit)
+    {
+        this(history, unit, DEFAULT_LOGGERS, 1, TimeUnit.SECONDS,
+                System::currentTimeMillis);
+    }
+
+
+    /**
+     * Creates empty rates
+     *
+     * @param history
+     *            the history window
+     * @param unit
+     *            the unit of {@code history}
+     * @param maxLoggers
+     *            the most loggers counted, zero to count only all loggers
+     * @param bucketWidth
+     *            the bucket width
+     * @param bucketUnit
+     *            the unit of {@code bucketWidth}
+     * @param clock
+     *            clock in milliseconds since the epoch
+     * @throws IllegalArgumentException
+     *             if the bucket width is less than a millisecond, the
+     *             history is less than a bucket, or the most loggers is
+     *             negative
+     */
+    public LogRates(long history, TimeUnit unit, int maxLoggers,
+            long bucketWidth, TimeUnit bucketUnit, LongSupplier clock)
+    {
+        if (maxLoggers < 0)
+            throw new IllegalArgumentException(
+                    "Bad most loggers " + maxLoggers);
+        this.maxLoggers = maxLoggers;
+        width = bucketUnit.toMillis(bucketWidth);
+        long buckets = width <= 0 ? 0 : unit.toMillis(history) / width;
+        if (buckets <= 0 || buckets >= Integer.MAX_VALUE / LEVELS.length)
+            throw new IllegalArgumentException("Bad history " + history + " "
+                    + unit + " for buckets of " + bucketWidth + " "
+                    + bucketUnit);
+        window = (int) buckets;
+        this.clock = clock;
+        total = series();
+    }
+
+
+    /**
+     * @return the bucket width in milliseconds
+     */
+    public long getBucketMillis()
+    {
+        return width;
+    }
+
+
+    /**
+     * @return the history window in milliseconds
+     */
+    public long getHistoryMillis()
+    {
+        return width * window;
+    }
+
+
+    /**
+     * @return the most loggers counted
+     */
+    public int getMaxLoggers()
+    {
+        return maxLoggers;
+    }
+
+
+    /**
+     * Counts a log call
+     *
+     * @param logger
+     *            the logger name, or null to count only in the total
+     * @param level
+     *            the log level
+     */
+    public void record(String logger, LogLevel level)
+    {
+        long bucket = clock.getAsLong() / width;
+        total.increment(bucket, level.ordinal());
+        if (logger != null)
+        {
+            RateSeries series = loggers.get(logger);
+            if (series == null)
+                series = track(logger);
+            if (series != null)
+                series.increment(bucket, level.ordinal());
+        }
+    }
+
+
+    /**
+     * @return the names of the loggers counted
+     */
+    public Set<String> getLoggers()
+    {
+        return Collections.unmodifiableSet(loggers.keySet());
+    }
+
+
+    /**
+     * Returns the log calls over a recent period
+     *
+     * @param logger
+     *            the logger name, or null for all loggers
+     * @param level
+     *            the log level, or null for all levels
+     * @param period
+     *            the period, rounded up to whole buckets and down to the
+     *            history window
+     * @param unit
+     *            the unit of {@code period}
+     * @return the count
+     */
+    public long getCount(String logger, LogLevel level, long period,
+            TimeUnit unit)
+    {
+        RateSeries series = logger == null ? total : loggers.get(logger);
+        if (series == null)
+            return 0;
+        int buckets = buckets(period, unit);
+        long last = clock.getAsLong() / width - 1;
+        if (level != null)
+            return series.sum(last, buckets, level.ordinal());
+        long n = 0;
+        for (LogLevel l : LEVELS)
+            n += series.sum(last, buckets, l.ordinal());
+        return n;
+    }
+
+
+    /**
+     * Returns the rate of log calls per second over a recent period
+     *
+     * @param logger
+     *            the logger name, or null for all loggers
+     * @param level
+     *            the log level, or null for all levels
+     * @param period
+     *            the period, rounded up to whole buckets and down to the
+     *            history window
+     * @param unit
+     *            the unit of {@code period}
+     * @return the rate per second
+     */
+    public double getRate(String logger, LogLevel level, long period,
+            TimeUnit unit)
+    {
+        return getCount(logger, level, period, unit) * 1000.0
+                / (buckets(period, unit) * width);
+    }
+
+
+    /**
+     * Returns a snapshot of the whole buckets in the history window
+     *
+     * @param logger
+     *            the logger name, or null for all loggers
+     * @return the snapshot, all zero if the logger is not counted
+     */
+    public Snapshot snapshot(String logger)
+    {
+        RateSeries series = logger == null ? total : loggers.get(logger);
+        long first = clock.getAsLong() / width - window;
+        long[] counts = new long[window * LEVELS.length];
+        if (series != null)
+            for (int b = 0; b < window; b++)
+                for (int l = 0; l < LEVELS.length; l++)
+                    counts[b * LEVELS.length + l] = series.get(first + b, l);
+        return new Snapshot(first * width, width, counts);
+    }
+
+
+    /**
+     * Starts counting a logger, on its first call
+     *
+     * @param logger
+     *            the logger name
+     * @return the logger's series, or null if the most loggers are counted
+     */
+    private RateSeries track(String logger)
+    {
+        if (tracked.get() >= maxLoggers)
+            return loggers.get(logger);
+        if (tracked.incrementAndGet() > maxLoggers)
+        /*
+         * Lost the last place to another logger
+         */
+        {
+            tracked.decrementAndGet();
+            return loggers.get(logger);
+        }
+
+        RateSeries series = series();
+        RateSeries raced = loggers.putIfAbsent(logger, series);
+        if (raced == null)
+            return series;
+        tracked.decrementAndGet();
+        return raced;
+    }
+
+
+    /**
+     * @return a new series covering the history window and current bucket
+     */
+    private RateSeries series()
+    {
+        return new RateSeries(window + 1, LEVELS.length);
+    }
+
+
+    /**
+     * @param period
+     *            a period
+     * @param unit
+     *            the unit of {@code period}
+     * @return the whole buckets covering the period, within the window
+     */
+    private int buckets(long period, TimeUnit unit)
+    {
+        long millis = unit.toMillis(period);
+        long buckets = millis / width + (millis % width > 0 ? 1 : 0);
+        return (int) Math.max(1, Math.min(window, buckets));
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Immutable snapshot of log call counts per bucket and level
+     */
+    public static final class Snapshot
+    {
+
+        /**
+         * Start of the first bucket, in milliseconds since the epoch
+         */
+        private final long start;
+
+        /**
+         * Bucket width in milliseconds
+         */
+        private final long width;
+
+        /**
+         * Counts indexed by bucket and level
+         */
+        private final long[] counts;
+
+
+        /**
+         * @param start
+         *            start of the first bucket
+         * @param width
+         *            bucket width
+         * @param counts
+         *            counts indexed by bucket and level
+         */
+        Snapshot(long start, long width, long[] counts)
+        {
+            this.start = start;
+            this.width = width;
+            this.counts = counts;
+        }
+
+
+        /**
+         * @return the start of the first bucket, in milliseconds since the
+         *         epoch
+         */
+        public long getStartMillis()
+        {
+            return start;
+        }
+
+
+        /**
+         * @return the bucket width in milliseconds
+         */
+        public long getBucketMillis()
+        {
+            return width;
+        }
+
+
+        /**
+         * @return the number of buckets, oldest first
+         */
+        public int getBuckets()
+        {
+            return counts.length / LEVELS.length;
+        }
+
+
+        /**
+         * Returns the count in a bucket at a level
+         *
+         * @param bucket
+         *            the bucket, from zero for the oldest
+         * @param level
+         *            the level
+         * @return the count
+         */
+        public long getCount(int bucket, LogLevel level)
+        {
+            return counts[bucket * LEVELS.length + level.ordinal()];
+        }
+
+
+        /**
+         * Returns the count in a bucket
+         *
+         * @param bucket
+         *            the bucket, from zero for the oldest
+         * @return the count at all levels
+         */
+        public long getCount(int bucket)
+        {
+            long n = 0;
+            for (LogLevel level : LEVELS)
+                n += getCount(bucket, level);
+            return n;
+        }
+    }
+}
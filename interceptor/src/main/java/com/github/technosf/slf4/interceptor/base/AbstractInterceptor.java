@@ -15,16 +15,36 @@
  */
 package com.github.technosf.slf4.interceptor.base;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.Marker;
 import org.slf4j.helpers.FormattingTuple;
 import org.slf4j.helpers.MessageFormatter;
 
+import com.github.technosf.slf4.interceptor.FormatProfiler;
+import com.github.technosf.slf4.interceptor.HeavyHitters;
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
 import com.github.technosf.slf4.interceptor.Interceptor;
+import com.github.technosf.slf4.interceptor.InterceptorMetrics;
+import com.github.technosf.slf4.interceptor.InterceptorMetrics.Outcome;
 import com.github.technosf.slf4.interceptor.LogLevel;
+import com.github.technosf.slf4.interceptor.LogRates;
+import com.github.technosf.slf4.interceptor.jfr.InterceptEvent;
+import com.github.technosf.slf4.interceptor.util.AsyncOutputStream.OverflowPolicy;
+import com.github.technosf.slf4.interceptor.util.BackpressurePublisher;
+import com.github.technosf.slf4.interceptor.util.MulticastRingBuffer;
+import com.github.technosf.slf4.interceptor.util.TailReader;
 
 /**
  * Abstract implementation of Interceptor calls
@@ -40,9 +60,11 @@ public abstract class AbstractInterceptor
 {
 
     /**
-     * Filter regex with default match-all
+     * Mode and filter, replaced as a whole so each log call sees a consistent
+     * pair, defaulting to PASSTHROUGH and match-all
      */
-    private static String FILTER_REGEX = REGEX_MATCH_ALL;
+    private static final AtomicReference<Config> CONFIG =
+            new AtomicReference<>(new Config(Mode.PASSTHROUGH, null));
 
     /**
      * The print stream used to print the intercepted log messages
@@ -50,9 +72,78 @@ public abstract class AbstractInterceptor
     private static PrintStream PRINTSTREAM;
 
     /**
-     * Intercept mode, defaulting to PASSTHROUGH
+     * Ring of recent intercepted messages for tail readers, null if disabled
      */
-    private static Mode MODE = Mode.PASSTHROUGH;
+    private static volatile MulticastRingBuffer TAIL;
+
+    /**
+     * Publisher of intercepted events
+     */
+    private static volatile BackpressurePublisher<InterceptedEvent> EVENTS =
+            new BackpressurePublisher<>(ForkJoinPool.commonPool(), 1024,
+                    OverflowPolicy.DROP_OLDEST);
+
+    /**
+     * Interception metrics, null if disabled
+     */
+    private static volatile InterceptorMetrics METRICS;
+
+    /**
+     * Per format string cost profiler, null if disabled
+     */
+    private static volatile FormatProfiler PROFILER;
+
+    /**
+     * Noisiest logger and format string trackers, null if disabled
+     */
+    private static volatile HeavyHitters HITTERS;
+
+    /**
+     * Log call counts over time, null if disabled
+     */
+    private static volatile LogRates RATES;
+
+
+    /**
+     * Immutable interceptor configuration
+     */
+    private static final class Config
+    {
+
+        /**
+         * Intercept mode
+         */
+        final Mode mode;
+
+        /**
+         * Filter regex
+         */
+        final String regex;
+
+        /**
+         * Compiled filter regex
+         */
+        final Pattern pattern;
+
+
+        /**
+         * @param mode
+         *            the intercept mode
+         * @param regex
+         *            the filter regex, match-all if null or empty
+         * @throws java.util.regex.PatternSyntaxException
+         *             if the regex is invalid
+         */
+        Config(Mode mode, String regex)
+        {
+            if (mode == null)
+                throw new NullPointerException("Mode is required");
+            this.mode = mode;
+            this.regex = regex == null || regex.isEmpty() ? REGEX_MATCH_ALL
+                    : regex;
+            this.pattern = Pattern.compile(this.regex);
+        }
+    }
 
 
     /**
@@ -81,7 +172,7 @@ public abstract class AbstractInterceptor
 
     public static final Mode getInterceptorMode()
     {
-        return MODE;
+        return CONFIG.get().mode;
     }
 
 
@@ -93,7 +184,25 @@ public abstract class AbstractInterceptor
      */
     public static final void setInterceptorMode(Mode mode)
     {
-        MODE = mode;
+        CONFIG.updateAndGet(config -> new Config(mode, config.regex));
+    }
+
+
+    /**
+     * Sets the Interceptor mode and filter together, so no log call sees the
+     * new mode with the old filter or the reverse
+     * 
+     * @param mode
+     *            the mode
+     * @param filterRegex
+     *            the filter, match-all if null or empty
+     * @throws java.util.regex.PatternSyntaxException
+     *             if the filter is invalid, leaving the configuration unchanged
+     */
+    public static final void setInterceptorConfig(Mode mode,
+            String filterRegex)
+    {
+        CONFIG.set(new Config(mode, filterRegex));
     }
 
 
@@ -131,40 +240,140 @@ public abstract class AbstractInterceptor
     @Override
     public final boolean filter(String msg)
     {
-        /*
-         * Copy the message to the interceptor stream
-         */
+        copy(msg);
+        return CONFIG.get().pattern.matcher(msg).matches();
+    }
+
+
+    /**
+     * Copies the message to the output printstream and the tail ring
+     * 
+     * @param msg
+     *            the message
+     */
+    private static void copy(String msg)
+    {
         if (PRINTSTREAM != null)
             PRINTSTREAM.println(msg.trim());
 
-        return msg.matches(FILTER_REGEX);
+        MulticastRingBuffer tail = TAIL;
+        if (tail != null)
+            tail(tail, msg.trim());
     }
 
 
     /**
      * Test the log message with the filter regex and copy the message to the
-     * output printstream
+     * output printstream and any event subscribers
+     * <p>
+     * The profiler is given the formatting time and the time matching the
+     * filter, not the time in the sinks, so a stalled sink is not charged to
+     * the format string that happened to meet it.
      * 
+     * @param config
+     *            the configuration of the log call
+     * @param event
+     *            the flight recorder event, or null if disabled
+     * @param profiler
+     *            the format string profiler, or null if disabled
+     * @param format
+     *            the format string, or null if not formatted
+     * @param formatNanos
+     *            the time formatting the message
+     * @param level
+     *            the log level
+     * @param log
+     *            the logger logged to
      * @param msg
      *            the message to test
+     * @param t
+     *            the throwable logged, or null
      * @return true if log should be filtered
      */
-    private final boolean filter(LogLevel level, String msg)
+    private final boolean filter(Config config, InterceptEvent event,
+            FormatProfiler profiler, String format, long formatNanos,
+            LogLevel level, Logger log, String msg, Throwable t)
     {
-        return filter(msg);
+        InterceptorMetrics metrics = METRICS;
+        boolean timed = metrics != null || event != null || profiler != null;
+        long start = timed ? System.nanoTime() : 0;
+
+        publish(level, log, msg, t);
+        copy(msg);
+
+        long copied = timed ? System.nanoTime() : 0;
+        if (metrics != null)
+            metrics.recordSink(copied - start);
+        if (event != null)
+            event.setSinkNanos(copied - start);
+        boolean filtered = config.pattern.matcher(msg).matches();
+        long filterNanos = timed ? System.nanoTime() - copied : 0;
+        if (event != null)
+            event.setFilterNanos(filterNanos);
+        if (profiler == null)
+            return filtered;
+        if (format == null)
+            profiler.recordUnformatted(filterNanos);
+        else
+            profiler.record(format, formatNanos, filterNanos);
+        return filtered;
     }
 
 
     /**
-     * Test the log message with the filter regex
+     * Filter a formatted message, recording the formatting and filter times
      * 
+     * @param config
+     *            the configuration of the log call
+     * @param event
+     *            the flight recorder event, or null if disabled
+     * @param profiler
+     *            the format string profiler, or null if disabled
+     * @param level
+     *            the log level
+     * @param log
+     *            the logger logged to
+     * @param format
+     *            the format string
      * @param tuple
-     *            the message to test
-     * @return true if log should be filtered
+     *            the formatted message
+     * @param start
+     *            when formatting started, from {@code System.nanoTime()}, if
+     *            timed
+     * @return true if the message matches the filter
      */
-    private final boolean filter(LogLevel level, FormattingTuple tuple)
+    private final boolean filter(Config config, InterceptEvent event,
+            FormatProfiler profiler, LogLevel level, Logger log,
+            String format, FormattingTuple tuple, long start)
+    {
+        boolean timed = event != null || profiler != null;
+        long formatNanos = timed ? System.nanoTime() - start : 0;
+        if (event != null)
+            event.setFormatNanos(formatNanos);
+        return filter(config, event, profiler, format, formatNanos, level,
+                log, tuple.getMessage(), tuple.getThrowable());
+    }
+
+
+    /**
+     * Submits an event to the event publisher, if it has subscribers
+     * 
+     * @param level
+     *            the log level
+     * @param log
+     *            the logger logged to
+     * @param msg
+     *            the formatted message
+     * @param t
+     *            the throwable logged, or null
+     */
+    private static void publish(LogLevel level, Logger log, String msg,
+            Throwable t)
     {
-        return filter(tuple.getMessage());
+        BackpressurePublisher<InterceptedEvent> events = EVENTS;
+        if (events.hasSubscribers())
+            events.submit(new InterceptedEvent(level, log.getName(), msg,
+                    System.currentTimeMillis(), t));
     }
 
 
@@ -173,17 +382,12 @@ public abstract class AbstractInterceptor
      * 
      * @param filterRegex
      *            the filter
+     * @throws java.util.regex.PatternSyntaxException
+     *             if the filter is invalid, leaving the configuration unchanged
      */
     public static final void setInterceptorFilter(String filterRegex)
     {
-        if (filterRegex == null || filterRegex.isEmpty())
-        {
-            FILTER_REGEX = REGEX_MATCH_ALL;
-        }
-        else
-        {
-            FILTER_REGEX = filterRegex;
-        }
+        CONFIG.updateAndGet(config -> new Config(config.mode, filterRegex));
     }
 
 
@@ -194,7 +398,7 @@ public abstract class AbstractInterceptor
      */
     public static final String getInterceptorFilter()
     {
-        return FILTER_REGEX;
+        return CONFIG.get().regex;
     }
 
 
@@ -225,6 +429,381 @@ public abstract class AbstractInterceptor
     }
 
 
+    /**
+     * Returns true if intercepted messages are copied to an output stream
+     * 
+     * @return true if an output stream is set
+     */
+    public static boolean hasInterceptOutputStream()
+    {
+        return PRINTSTREAM != null;
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.slf4.interceptor.Interceptor#getEventPublisher()
+     */
+    @Override
+    public Flow.Publisher<InterceptedEvent> getEventPublisher()
+    {
+        return EVENTS;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.slf4.interceptor.Interceptor#getEventPublisher(int)
+     */
+    @Override
+    public Flow.Publisher<List<InterceptedEvent>> getEventPublisher(
+            int maxBatch)
+    {
+        return EVENTS.batches(maxBatch);
+    }
+
+
+    /**
+     * Replaces the publisher of intercepted events, completing the
+     * subscribers of the previous publisher
+     * 
+     * @param executor
+     *            executor delivering events to subscribers
+     * @param capacity
+     *            the events queued per subscriber
+     * @param policy
+     *            what to do with events for a subscriber with a full queue
+     */
+    public static void setInterceptEventPublisher(Executor executor,
+            int capacity, OverflowPolicy policy)
+    {
+        BackpressurePublisher<InterceptedEvent> previous = EVENTS;
+        EVENTS = new BackpressurePublisher<>(executor, capacity, policy);
+        previous.close();
+    }
+
+
+    /**
+     * Returns the number of events dropped by the overflow policy of the
+     * event publisher
+     * 
+     * @return the dropped event count
+     */
+    public static long getInterceptEventsDropped()
+    {
+        return EVENTS.getDroppedCount();
+    }
+
+
+    /**
+     * Returns the number of subscribers to intercepted events
+     * 
+     * @return the subscriber count
+     */
+    public static int getInterceptEventSubscribers()
+    {
+        return EVENTS.getSubscriberCount();
+    }
+
+
+    /**
+     * Returns the number of intercepted events queued for subscribers
+     * 
+     * @return the queued event count, across all subscribers
+     */
+    public static long getInterceptEventQueueDepth()
+    {
+        return EVENTS.getQueueDepth();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Enables or disables interception metrics. Enabling replaces any
+     * metrics with new, empty ones.
+     * 
+     * @param enabled
+     *            true to record metrics
+     */
+    public static void setInterceptMetrics(boolean enabled)
+    {
+        METRICS = enabled ? new InterceptorMetrics() : null;
+    }
+
+
+    /**
+     * Returns the interception metrics
+     * 
+     * @return the metrics, or null if disabled
+     */
+    public static InterceptorMetrics getInterceptMetrics()
+    {
+        return METRICS;
+    }
+
+
+    /**
+     * Enables or disables the per format string cost profiler. Enabling
+     * replaces any profiler with a new, empty one.
+     * 
+     * @param enabled
+     *            true to profile format strings
+     */
+    public static void setInterceptProfiler(boolean enabled)
+    {
+        PROFILER = enabled ? new FormatProfiler() : null;
+    }
+
+
+    /**
+     * Returns the per format string cost profiler
+     * 
+     * @return the profiler, or null if disabled
+     */
+    public static FormatProfiler getInterceptProfiler()
+    {
+        return PROFILER;
+    }
+
+
+    /**
+     * Enables or disables tracking of the noisiest loggers and format
+     * strings. Enabling replaces any trackers with new, empty ones.
+     * 
+     * @param capacity
+     *            the number of loggers and of format strings to count, or
+     *            zero to disable tracking
+     */
+    public static void setInterceptHeavyHitters(int capacity)
+    {
+        HITTERS = capacity > 0 ? new HeavyHitters(capacity) : null;
+    }
+
+
+    /**
+     * Returns the noisiest logger and format string trackers
+     * 
+     * @return the trackers, or null if disabled
+     */
+    public static HeavyHitters getInterceptHeavyHitters()
+    {
+        return HITTERS;
+    }
+
+
+    /**
+     * Enables or disables counting log calls over time, per logger and level,
+     * in one second buckets, for up to {@code LogRates.DEFAULT_LOGGERS}
+     * loggers. Enabling replaces any counts with new, empty ones.
+     * 
+     * @param history
+     *            the history window, or zero to disable counting
+     * @param unit
+     *            the unit of {@code history}
+     * @throws IllegalArgumentException
+     *             if the history is less than a second
+     */
+    public static void setInterceptRates(long history, TimeUnit unit)
+    {
+        RATES = history > 0 ? new LogRates(history, unit) : null;
+    }
+
+
+    /**
+     * Returns the log call counts over time
+     * 
+     * @return the counts, or null if disabled
+     */
+    public static LogRates getInterceptRates()
+    {
+        return RATES;
+    }
+
+
+    /**
+     * Counts a log call in the noisiest logger and format string trackers
+     * and the counts over time, if enabled
+     * 
+     * @param level
+     *            the log level
+     * @param log
+     *            the logger logged to
+     * @param format
+     *            the format string, or null if not formatted
+     */
+    private static void count(LogLevel level, Logger log, String format)
+    {
+        HeavyHitters hitters = HITTERS;
+        LogRates rates = RATES;
+        if (hitters != null)
+            hitters.record(log.getName(), format);
+        if (rates != null)
+            rates.record(log.getName(), level);
+    }
+
+
+    /**
+     * Records an intercepted log call in the metrics and flight recorder
+     * 
+     * @param metrics
+     *            the metrics, or null if disabled
+     * @param event
+     *            the flight recorder event, or null if disabled
+     * @param level
+     *            the log level
+     * @param log
+     *            the logger logged to
+     * @param mode
+     *            the mode the call was intercepted in
+     * @param logged
+     *            true if the call was passed to the logger
+     * @param start
+     *            when the call started, from {@code System.nanoTime()}
+     */
+    private static void record(InterceptorMetrics metrics,
+            InterceptEvent event, LogLevel level, Logger log, Mode mode,
+            boolean logged, long start)
+    {
+        Outcome outcome = Outcome.of(mode.logToInterceptor, logged);
+        if (metrics != null)
+            metrics.recordIntercept(level, outcome, System.nanoTime() - start);
+        if (event != null)
+            event.finish(level, log.getName(), outcome);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Sets the capacity of the ring buffer holding recent intercepted
+     * messages for tail readers. Readers of a previous ring reach its end.
+     * 
+     * @param capacity
+     *            the capacity in bytes, or zero to disable tailing
+     */
+    public static void setInterceptTailCapacity(int capacity)
+    {
+        MulticastRingBuffer previous = TAIL;
+        TAIL = capacity > 0 ? new MulticastRingBuffer(capacity) : null;
+        if (previous != null)
+            previous.close();
+    }
+
+
+    /**
+     * Returns the capacity of the ring buffer holding recent intercepted
+     * messages
+     * 
+     * @return the capacity in bytes, or zero if tailing is disabled
+     */
+    public static int getInterceptTailCapacity()
+    {
+        MulticastRingBuffer tail = TAIL;
+        return tail == null ? 0 : tail.getCapacity();
+    }
+
+
+    /**
+     * Returns how far the slowest tail reader is behind
+     * 
+     * @return the largest reader lag in bytes, zero if there are no readers
+     */
+    public static long getInterceptTailLag()
+    {
+        MulticastRingBuffer tail = TAIL;
+        long lag = 0;
+        if (tail != null)
+        {
+            for (MulticastRingBuffer.Cursor cursor : tail.getCursors())
+                lag = Math.max(lag, cursor.getLag());
+        }
+        return lag;
+    }
+
+
+    /**
+     * Returns a reader of intercepted messages from now on
+     * 
+     * @return the reader
+     * @throws IllegalStateException
+     *             if tailing is not enabled
+     */
+    public static TailReader tailIntercepted()
+    {
+        return tail().tail();
+    }
+
+
+    /**
+     * Returns a reader of intercepted messages from an earlier sequence, as
+     * far back as the ring still holds
+     * 
+     * @param sequence
+     *            the sequence to start at
+     * @return the reader
+     * @throws IllegalStateException
+     *             if tailing is not enabled
+     */
+    public static TailReader tailIntercepted(long sequence)
+    {
+        return tail().tail(sequence);
+    }
+
+
+    /**
+     * Returns the sequence of the next intercepted message byte, for starting
+     * a later reader from this point
+     * 
+     * @return the sequence
+     * @throws IllegalStateException
+     *             if tailing is not enabled
+     */
+    public static long getInterceptTailSequence()
+    {
+        return tail().getSequence();
+    }
+
+
+    /**
+     * @return the tail ring
+     */
+    private static MulticastRingBuffer tail()
+    {
+        MulticastRingBuffer tail = TAIL;
+        if (tail == null)
+            throw new IllegalStateException("Intercept tail is not enabled");
+        return tail;
+    }
+
+
+    /**
+     * Writes a message to the tail ring as a record
+     * 
+     * @param tail
+     *            the ring
+     * @param msg
+     *            the message
+     */
+    private static void tail(MulticastRingBuffer tail, String msg)
+    {
+        try
+        {
+            tail.write((msg + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        /*
+         * The ring has been replaced
+         */
+        {
+        }
+    }
+
+
     /* ---------------------------------------------------------------- */
 
     /**
@@ -236,12 +815,21 @@ public abstract class AbstractInterceptor
     @Override
     public final void intercept(LogLevel logLevel, Logger log, String msg)
     {
-        if ((MODE.logToInterceptor && formatAndLog(logLevel, msg))
-                || MODE.logToLogger)
+        count(logLevel, log, null);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log, msg))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, msg);
         }
-
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -255,11 +843,21 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, String format,
             Object arg)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, format, arg)) || MODE.logToLogger)
+        count(logLevel, log, format);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log, format, arg))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, format, arg);
         }
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -274,13 +872,22 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, String format,
             Object arg1, Object arg2)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, format, arg1, arg2))
-                || MODE.logToLogger)
+        count(logLevel, log, format);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log,
+                        format, arg1, arg2))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, format, arg1, arg2);
         }
-
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -294,13 +901,22 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, String format,
             Object... arguments)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, format, arguments))
-                || MODE.logToLogger)
+        count(logLevel, log, format);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log,
+                        format, arguments))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, format, arguments);
         }
-
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -314,11 +930,21 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, String msg,
             Throwable t)
     {
-        if ((MODE.logToInterceptor && formatAndLog(logLevel, msg, t))
-                || MODE.logToLogger)
+        count(logLevel, log, null);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log, msg, t))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, msg, t);
         }
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -326,11 +952,21 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, Marker marker,
             String msg)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, msg)) || MODE.logToLogger)
+        count(logLevel, log, null);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log, msg))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, marker, msg);
         }
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -338,11 +974,21 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, Marker marker,
             String format, Object arg)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, format, arg)) || MODE.logToLogger)
+        count(logLevel, log, format);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log, format, arg))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, marker, format, arg);
         }
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -350,12 +996,22 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, Marker marker,
             String format, Object arg1, Object arg2)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, format, arg1, arg2))
-                || MODE.logToLogger)
+        count(logLevel, log, format);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log,
+                        format, arg1, arg2))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, marker, format, arg1, arg2);
         }
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -363,12 +1019,22 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, Marker marker,
             String format, Object... arguments)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, format, arguments))
-                || MODE.logToLogger)
+        count(logLevel, log, format);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log,
+                        format, arguments))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, marker, format, arguments);
         }
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -376,11 +1042,21 @@ public abstract class AbstractInterceptor
     public final void intercept(LogLevel logLevel, Logger log, Marker marker,
             String msg, Throwable t)
     {
-        if ((MODE.logToInterceptor
-                && formatAndLog(logLevel, msg, t)) || MODE.logToLogger)
+        count(logLevel, log, null);
+        InterceptorMetrics metrics = METRICS;
+        long start = metrics == null ? 0 : System.nanoTime();
+        Config config = CONFIG.get();
+        Mode mode = config.mode;
+        InterceptEvent event = InterceptEvent.start();
+        boolean logged = (mode.logToInterceptor
+                && formatAndLog(config, event, logLevel, log, msg, t))
+                || mode.logToLogger;
+        if (logged)
         {
             logLevel.log(log, marker, msg, t);
         }
+        if (metrics != null || event != null)
+            record(metrics, event, logLevel, log, mode, logged, start);
     }
 
 
@@ -394,61 +1070,96 @@ public abstract class AbstractInterceptor
     /**
      * For formatted messages, first substitute arguments and then log.
      *
+     * @param config
+     *            the configuration of the log call
+     * @param event
+     *            the flight recorder event, or null if disabled
      * @param level
+     * @param log
      * @param format
      * @param arg1
      * @param arg2
      */
-    private boolean formatAndLog(LogLevel level, String msg)
+    private boolean formatAndLog(Config config, InterceptEvent event,
+            LogLevel level, Logger log, String msg)
     {
-        return !filter(level, msg);
+        return !filter(config, event, PROFILER, null, 0, level, log, msg,
+                null);
     }
 
 
     /**
      * For formatted messages, first substitute arguments and then log.
      *
+     * @param config
+     *            the configuration of the log call
+     * @param event
+     *            the flight recorder event, or null if disabled
      * @param level
+     * @param log
      * @param format
      * @param arg1
      * @param arg2
      */
-    private boolean formatAndLog(LogLevel level, String format, Object arg)
+    private boolean formatAndLog(Config config, InterceptEvent event,
+            LogLevel level, Logger log, String format, Object arg)
     {
+        FormatProfiler profiler = PROFILER;
+        long start = event == null && profiler == null ? 0
+                : System.nanoTime();
         FormattingTuple tp = MessageFormatter.format(format, arg);
-        return !filter(level, tp);
+        return !filter(config, event, profiler, level, log, format, tp,
+                start);
     }
 
 
     /**
      * For formatted messages, first substitute arguments and then log.
      *
+     * @param config
+     *            the configuration of the log call
+     * @param event
+     *            the flight recorder event, or null if disabled
      * @param level
+     * @param log
      * @param format
      * @param arg1
      * @param arg2
      */
-    private boolean formatAndLog(LogLevel level, String format, Object arg1,
-            Object arg2)
+    private boolean formatAndLog(Config config, InterceptEvent event,
+            LogLevel level, Logger log, String format, Object arg1, Object arg2)
     {
+        FormatProfiler profiler = PROFILER;
+        long start = event == null && profiler == null ? 0
+                : System.nanoTime();
         FormattingTuple tp = MessageFormatter.format(format, arg1, arg2);
-        return !filter(level, tp);
+        return !filter(config, event, profiler, level, log, format, tp,
+                start);
     }
 
 
     /**
      * For formatted messages, first substitute arguments and then log.
      *
+     * @param config
+     *            the configuration of the log call
+     * @param event
+     *            the flight recorder event, or null if disabled
      * @param level
+     * @param log
      * @param format
      * @param arguments
      *            a list of 3 ore more arguments
      */
-    private boolean formatAndLog(LogLevel level, String format,
-            Object... arguments)
+    private boolean formatAndLog(Config config, InterceptEvent event,
+            LogLevel level, Logger log, String format, Object... arguments)
     {
+        FormatProfiler profiler = PROFILER;
+        long start = event == null && profiler == null ? 0
+                : System.nanoTime();
         FormattingTuple tp = MessageFormatter.arrayFormat(format, arguments);
-        return !filter(level, tp);
+        return !filter(config, event, profiler, level, log, format, tp,
+                start);
     }
 
     /* ---------------------------------------------------------------- */
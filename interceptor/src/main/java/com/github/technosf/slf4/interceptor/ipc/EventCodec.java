@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.ipc;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+import com.github.technosf.slf4.interceptor.LogLevel;
+
+/**
+ * Binary framing of {@code InterceptedEvent}s
+ * <p>
+ * A frame is a big endian {@code int} body length followed by the body:
+ * format version, level, timestamp, then logger name, message and throwable
+ * as {@code int} length prefixed UTF-8, a throwable length of -1 meaning none.
+ * Throwables are sent as their {@code toString}, and decode as a
+ * {@code RemoteThrowable} carrying that text.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class EventCodec
+{
+
+    /**
+     * Decoded stand in for a throwable logged in another process
+     */
+    public static final class RemoteThrowable
+            extends Throwable
+    {
+
+        /**
+         *
+         */
+        private static final long serialVersionUID = 20231019120000L;
+
+
+        /**
+         * @param description
+         *            the original throwable's {@code toString}
+         */
+        RemoteThrowable(String description)
+        {
+            super(description, null, false, false);
+        }
+
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The original throwable's description.
+         *
+         * @see java.lang.Throwable#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return getMessage();
+        }
+    }
+
+    /**
+     * Format version
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Frame length prefix size
+     */
+    public static final int HEADER = Integer.BYTES;
+
+    /**
+     * Largest body accepted
+     */
+    public static final int MAX_BODY = 16 * 1024 * 1024;
+
+    /**
+     * Cached level values
+     */
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+
+    /**
+     * Not instantiable
+     */
+    private EventCodec()
+    {
+    }
+
+
+    /**
+     * Encodes an event as a frame
+     *
+     * @param event
+     *            the event
+     * @return the frame
+     */
+    public static byte[] encode(InterceptedEvent event)
+    {
+        byte[] logger = utf8(event.getLoggerName());
+        byte[] message = utf8(event.getMessage());
+        byte[] throwable = event.getThrowable() == null ? null
+                : utf8(event.getThrowable().toString());
+
+        int body = 2 + Long.BYTES + 3 * Integer.BYTES + logger.length
+                + message.length + (throwable == null ? 0 : throwable.length);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER + body);
+        frame.putInt(body);
+        frame.put(VERSION);
+        frame.put((byte) event.getLevel().ordinal());
+        frame.putLong(event.getTimestamp());
+        frame.putInt(logger.length).put(logger);
+        frame.putInt(message.length).put(message);
+        if (throwable == null)
+            frame.putInt(-1);
+        else
+            frame.putInt(throwable.length).put(throwable);
+        return frame.array();
+    }
+
+
+    /**
+     * Decodes the next frame in a buffer, if it holds a whole frame. The
+     * buffer position is advanced past a decoded frame, and left unchanged
+     * otherwise.
+     *
+     * @param buffer
+     *            the buffer, ready for reading
+     * @return the event, or null if the buffer does not hold a whole frame
+     * @throws IllegalArgumentException
+     *             if the frame is malformed
+     */
+    public static InterceptedEvent decode(ByteBuffer buffer)
+    {
+        if (buffer.remaining() < HEADER)
+            return null;
+
+        int body = buffer.getInt(buffer.position());
+        if (body < 0 || body > MAX_BODY)
+            throw new IllegalArgumentException("Bad frame length " + body);
+        if (buffer.remaining() < HEADER + body)
+            return null;
+
+        ByteBuffer frame = buffer.slice(buffer.position() + HEADER, body);
+        buffer.position(buffer.position() + HEADER + body);
+        try
+        {
+            if (frame.get() != VERSION)
+                throw new IllegalArgumentException("Unknown frame version");
+            int level = frame.get();
+            if (level < 0 || level >= LEVELS.length)
+                throw new IllegalArgumentException("Bad level " + level);
+            long timestamp = frame.getLong();
+            String logger = string(frame);
+            String message = string(frame);
+            String throwable = string(frame);
+            return new InterceptedEvent(LEVELS[level], logger, message,
+                    timestamp,
+                    throwable == null ? null : new RemoteThrowable(throwable));
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            throw new IllegalArgumentException("Truncated frame", e);
+        }
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return the UTF-8 bytes of a string, empty for null
+     */
+    private static byte[] utf8(String s)
+    {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Reads a length prefixed string
+     *
+     * @param frame
+     *            the frame
+     * @return the string, or null for length -1
+     */
+    private static String string(ByteBuffer frame)
+    {
+        int len = frame.getInt();
+        if (len < 0)
+            return null;
+        if (len > frame.remaining())
+            throw new IllegalArgumentException("Truncated frame");
+        byte[] bytes = new byte[len];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
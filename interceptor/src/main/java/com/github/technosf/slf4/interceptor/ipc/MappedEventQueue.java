@@ -0,0 +1,337 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.ipc;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+
+/**
+ * Multi-producer event queue in a memory-mapped file
+ * <p>
+ * Encoded events are appended to a ring in the file by any number of threads,
+ * with no system calls and no locks: a producer claims space by a
+ * compare-and-set of the tail counter in the file header, copies its record
+ * in, and commits it by writing the record header last, with release
+ * semantics. A {@code MappedEventReader}, typically in a sidecar process,
+ * maps the same file and follows the records with its own cursor.
+ * <p>
+ * Producers never wait for readers, so a slow or crashed reader cannot affect
+ * the application; a reader that falls a ring's capacity behind skips ahead
+ * and counts the bytes lost.
+ * <p>
+ * File layout, in native byte order: magic and capacity at offset 0, the tail
+ * counter on its own cache line at offset 64, and the ring from offset 128.
+ * Each record starts 8 byte aligned with a {@code long} header, its high
+ * {@code int} one more than the lap of the ring the record was written in, so
+ * the zeroed ring of a new file holds no valid header, and its low
+ * {@code int} the length of the {@code EventCodec} frame that follows, or
+ * minus the length of padding skipped at the end of the ring.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class MappedEventQueue
+        implements Flow.Subscriber<InterceptedEvent>, AutoCloseable
+{
+
+    /**
+     * File magic
+     */
+    static final int MAGIC = 0x534C4649;
+
+    /**
+     * Offset of the magic
+     */
+    static final int MAGIC_OFFSET = 0;
+
+    /**
+     * Offset of the ring capacity
+     */
+    static final int CAPACITY_OFFSET = 8;
+
+    /**
+     * Offset of the tail counter
+     */
+    static final int TAIL_OFFSET = 64;
+
+    /**
+     * Offset of the ring
+     */
+    static final int DATA_OFFSET = 128;
+
+    /**
+     * Record header size
+     */
+    static final int RECORD_HEADER = Long.BYTES;
+
+    /**
+     * Native order long view of mapped buffers
+     */
+    static final VarHandle LONGS = MethodHandles
+            .byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Native order int view of mapped buffers
+     */
+    static final VarHandle INTS = MethodHandles
+            .byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Ring capacity
+     */
+    private final int capacity;
+
+    /**
+     * Ring index mask
+     */
+    private final int mask;
+
+    /**
+     * Shift giving the lap from a position
+     */
+    private final int lapShift;
+
+    /**
+     * Events appended
+     */
+    private final AtomicLong appended = new AtomicLong();
+
+    /**
+     * Events rejected as larger than half the ring
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+
+    /**
+     * Opens a queue file, creating it if need be
+     *
+     * @param file
+     *            the file
+     * @param capacity
+     *            the ring capacity in bytes, a power of two, which must match
+     *            an existing file
+     * @throws IOException
+     *             if the file cannot be mapped, or is not a queue of this
+     *             capacity
+     */
+    public MappedEventQueue(Path file, int capacity) throws IOException
+    {
+        if (capacity < 1024 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException(
+                    "Capacity must be a power of two of at least 1024");
+        this.capacity = capacity;
+        mask = capacity - 1;
+        lapShift = Integer.numberOfTrailingZeros(capacity);
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            boolean created = channel.size() == 0;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    DATA_OFFSET + capacity);
+            if (created)
+            {
+                LONGS.setVolatile(buffer, CAPACITY_OFFSET, (long) capacity);
+                INTS.setVolatile(buffer, MAGIC_OFFSET, MAGIC);
+            }
+            else if ((int) INTS.getVolatile(buffer, MAGIC_OFFSET) != MAGIC
+                    || (long) LONGS.getVolatile(buffer,
+                            CAPACITY_OFFSET) != capacity)
+            {
+                throw new IOException(
+                        "Not an event queue of capacity " + capacity);
+            }
+        }
+    }
+
+
+    /**
+     * Appends an event without blocking or system calls
+     *
+     * @param event
+     *            the event
+     * @return false if the encoded event is larger than half the ring
+     */
+    public boolean offer(InterceptedEvent event)
+    {
+        byte[] frame = EventCodec.encode(event);
+        int need = align(RECORD_HEADER + frame.length);
+        if (need > capacity >> 1)
+        {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        long position;
+        int pad;
+        do
+        {
+            position = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+            int offset = (int) position & mask;
+            pad = offset + need > capacity ? capacity - offset : 0;
+        }
+        while (!LONGS.compareAndSet(buffer, TAIL_OFFSET, position,
+                position + pad + need));
+
+        if (pad > 0)
+        /*
+         * Skip the end of the ring so the record is contiguous
+         */
+        {
+            commit(position, -pad);
+            position += pad;
+        }
+        buffer.put(DATA_OFFSET + ((int) position & mask) + RECORD_HEADER,
+                frame);
+        commit(position, frame.length);
+        appended.incrementAndGet();
+        return true;
+    }
+
+
+    /**
+     * Returns the number of events appended by this process
+     *
+     * @return the appended event count
+     */
+    public long getAppended()
+    {
+        return appended.get();
+    }
+
+
+    /**
+     * Returns the number of events rejected as too large
+     *
+     * @return the rejected event count
+     */
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+
+    /**
+     * Returns the tail counter, the number of bytes ever claimed in the ring
+     *
+     * @return the tail position
+     */
+    public long getTail()
+    {
+        return (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+
+    @Override
+    public void onNext(InterceptedEvent event)
+    {
+        offer(event);
+    }
+
+
+    @Override
+    public void onError(Throwable throwable)
+    {
+    }
+
+
+    @Override
+    public void onComplete()
+    {
+    }
+
+
+    /**
+     * Forces appended records to the file. The mapping is released when the
+     * queue is garbage collected.
+     */
+    @Override
+    public void close()
+    {
+        buffer.force();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Writes a record header with release semantics, publishing the record
+     *
+     * @param position
+     *            the record position
+     * @param length
+     *            the frame length, or minus the padding length
+     */
+    private void commit(long position, int length)
+    {
+        LONGS.setRelease(buffer, DATA_OFFSET + ((int) position & mask),
+                header((position >>> lapShift) + 1, length));
+    }
+
+
+    /**
+     * Composes a record header
+     *
+     * @param tag
+     *            one more than the lap of the ring
+     * @param length
+     *            the record length
+     * @return the header
+     */
+    static long header(long tag, int length)
+    {
+        return tag << 32 | (length & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Rounds up to the record alignment
+     *
+     * @param n
+     *            a size
+     * @return the aligned size
+     */
+    static int align(int n)
+    {
+        return (n + 7) & ~7;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.ipc;
+
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.CAPACITY_OFFSET;
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.DATA_OFFSET;
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.INTS;
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.LONGS;
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.MAGIC;
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.MAGIC_OFFSET;
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.RECORD_HEADER;
+import static com.github.technosf.slf4.interceptor.ipc.MappedEventQueue.TAIL_OFFSET;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+
+/**
+ * Reads events from a {@code MappedEventQueue} file with its own cursor
+ * <p>
+ * The file is mapped read only, so a reader, typically in a sidecar process,
+ * cannot disturb the producers. Polling costs no system calls: a record is
+ * visible once its producer has committed its header, and records are read in
+ * the order their space was claimed. A record claimed but not yet committed
+ * holds back the records after it until it is.
+ * <p>
+ * A reader more than the ring's capacity behind the producers has lost
+ * records to overwriting; it skips to the tail and counts the bytes lost.
+ * <p>
+ * A reader is not thread safe.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class MappedEventReader
+        implements AutoCloseable
+{
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Ring capacity
+     */
+    private final int capacity;
+
+    /**
+     * Ring index mask
+     */
+    private final int mask;
+
+    /**
+     * Shift giving the lap from a position
+     */
+    private final int lapShift;
+
+    /**
+     * Position of the next record
+     */
+    private long position;
+
+    /**
+     * Bytes skipped after being overwritten
+     */
+    private long lost;
+
+
+    /**
+     * Opens a reader at the queue's tail, to read events appended from now on
+     *
+     * @param file
+     *            the queue file
+     * @throws IOException
+     *             if the file cannot be mapped or is not a queue
+     */
+    public MappedEventReader(Path file) throws IOException
+    {
+        this(file, -1);
+    }
+
+
+    /**
+     * Opens a reader at a position, such as one saved from
+     * {@code getPosition()} by an earlier reader
+     *
+     * @param file
+     *            the queue file
+     * @param position
+     *            the record position to read from, 0 for the first record
+     *            ever appended, or -1 for the tail
+     * @throws IOException
+     *             if the file cannot be mapped or is not a queue
+     */
+    public MappedEventReader(Path file, long position) throws IOException
+    {
+        try (FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() < DATA_OFFSET)
+                throw new IOException("Not an event queue");
+            MappedByteBuffer header =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, DATA_OFFSET);
+            long size = (long) LONGS.getVolatile(header, CAPACITY_OFFSET);
+            if ((int) INTS.getVolatile(header, MAGIC_OFFSET) != MAGIC
+                    || size < 1024 || Long.bitCount(size) != 1
+                    || channel.size() < DATA_OFFSET + size)
+                throw new IOException("Not an event queue");
+            capacity = (int) size;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    DATA_OFFSET + size);
+        }
+        mask = capacity - 1;
+        lapShift = Integer.numberOfTrailingZeros(capacity);
+        this.position = position < 0 ? tail() : position;
+    }
+
+
+    /**
+     * Returns the next event, if one has been committed
+     *
+     * @return the event, or null if there is none yet
+     * @throws IllegalArgumentException
+     *             if a record is malformed
+     */
+    public InterceptedEvent poll()
+    {
+        while (true)
+        {
+            long tail = tail();
+            if (tail - position > capacity)
+            /*
+             * Lapped, the records here have been overwritten
+             */
+            {
+                skip(tail);
+                continue;
+            }
+            if (position >= tail)
+                return null;
+
+            int offset = DATA_OFFSET + ((int) position & mask);
+            long header = (long) LONGS.getAcquire(buffer, offset);
+            int tag = (int) (position >>> lapShift) + 1;
+            if ((int) (header >>> 32) != tag)
+            /*
+             * Claimed but uncommitted, or already overwritten
+             */
+            {
+                if ((int) (header >>> 32) - tag > 0)
+                    skip(tail());
+                else
+                    return null;
+                continue;
+            }
+
+            int length = (int) header;
+            if (length < 0)
+            /*
+             * Padding at the end of the ring
+             */
+            {
+                position += -length;
+                continue;
+            }
+
+            byte[] frame = new byte[length];
+            buffer.get(offset + RECORD_HEADER, frame);
+            /*
+             * The copy's plain loads must not move after the tail is read
+             * again, or a torn frame could pass the check
+             */
+            VarHandle.loadLoadFence();
+            if (tail() - position > capacity)
+                /*
+                 * Overwritten while copying
+                 */
+                continue;
+
+            position += MappedEventQueue.align(RECORD_HEADER + length);
+            return EventCodec.decode(ByteBuffer.wrap(frame));
+        }
+    }
+
+
+    /**
+     * Returns the position of the next record, from which a later reader can
+     * resume
+     *
+     * @return the position
+     */
+    public long getPosition()
+    {
+        return position;
+    }
+
+
+    /**
+     * Returns the number of bytes behind the producers
+     *
+     * @return the lag
+     */
+    public long getLag()
+    {
+        return Math.max(0, tail() - position);
+    }
+
+
+    /**
+     * Returns the number of bytes skipped after being overwritten
+     *
+     * @return the lost byte count
+     */
+    public long getLostBytes()
+    {
+        return lost;
+    }
+
+
+    /**
+     * Returns the ring capacity of the queue
+     *
+     * @return the capacity in bytes
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+
+    /**
+     * Nothing to release, the mapping is released when the reader is garbage
+     * collected
+     */
+    @Override
+    public void close()
+    {
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return the producers' tail counter
+     */
+    private long tail()
+    {
+        return (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+    }
+
+
+    /**
+     * Skips to a position, counting the bytes lost
+     *
+     * @param to
+     *            the position
+     */
+    private void skip(long to)
+    {
+        lost += to - position;
+        position = to;
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.ipc;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+
+/**
+ * Collects intercepted events from {@code UnixSocketSink}s in other
+ * processes
+ * <p>
+ * A single thread accepts producers on a Unix domain socket and reads their
+ * frames with a selector loop. Decoded events are held for a reordering
+ * window and handed to a consumer in timestamp order, so the streams of the
+ * producers are merged into one timeline. Events arriving later than the
+ * window are passed on as soon as they arrive, and counted.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class UnixSocketCollector
+        implements AutoCloseable
+{
+
+    /**
+     * Collector thread numbering
+     */
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    /**
+     * Read buffer size per producer
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The socket file
+     */
+    private final Path socket;
+
+    /**
+     * The listening channel
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     * The selector
+     */
+    private final Selector selector;
+
+    /**
+     * Receives the merged events
+     */
+    private final Consumer<InterceptedEvent> consumer;
+
+    /**
+     * How long events are held for reordering, in milliseconds
+     */
+    private final long windowMillis;
+
+    /**
+     * Events held for reordering, only used by the collector thread
+     */
+    private final PriorityQueue<InterceptedEvent> pending =
+            new PriorityQueue<>(
+                    Comparator.comparingLong(InterceptedEvent::getTimestamp));
+
+    /**
+     * The collector thread
+     */
+    private final Thread loop;
+
+    /**
+     * Timestamp of the last event passed on
+     */
+    private long emitted = Long.MIN_VALUE;
+
+    /**
+     * Events received
+     */
+    private final AtomicLong received = new AtomicLong();
+
+    /**
+     * Events passed on after later events, having missed the window
+     */
+    private final AtomicLong late = new AtomicLong();
+
+    /**
+     * Producers connected
+     */
+    private final AtomicInteger producers = new AtomicInteger();
+
+    /**
+     * True once closed
+     */
+    private volatile boolean closed;
+
+
+    /**
+     * Creates and starts a collector with a daemon thread, replacing any
+     * stale socket file
+     *
+     * @param socket
+     *            the socket file
+     * @param windowMillis
+     *            how long events are held for reordering
+     * @param consumer
+     *            receives the merged events, on the collector thread
+     * @throws IOException
+     *             if the socket cannot be bound
+     */
+    public UnixSocketCollector(Path socket, long windowMillis,
+            Consumer<InterceptedEvent> consumer) throws IOException
+    {
+        this(socket, windowMillis, consumer, r -> {
+            Thread thread = new Thread(r,
+                    "UnixSocketCollector-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Creates and starts a collector, replacing any stale socket file
+     *
+     * @param socket
+     *            the socket file
+     * @param windowMillis
+     *            how long events are held for reordering
+     * @param consumer
+     *            receives the merged events, on the collector thread
+     * @param threadFactory
+     *            factory for the collector thread
+     * @throws IOException
+     *             if the socket cannot be bound
+     */
+    public UnixSocketCollector(Path socket, long windowMillis,
+            Consumer<InterceptedEvent> consumer, ThreadFactory threadFactory)
+            throws IOException
+    {
+        this.socket = socket;
+        this.windowMillis = windowMillis;
+        this.consumer = consumer;
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        server.configureBlocking(false);
+        selector = Selector.open();
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        loop = threadFactory.newThread(this::run);
+        loop.start();
+    }
+
+
+    /**
+     * Returns the number of events received
+     *
+     * @return the received event count
+     */
+    public long getReceived()
+    {
+        return received.get();
+    }
+
+
+    /**
+     * Returns the number of events passed on out of order, having arrived
+     * after the reordering window
+     *
+     * @return the late event count
+     */
+    public long getLate()
+    {
+        return late.get();
+    }
+
+
+    /**
+     * Returns the number of connected producers
+     *
+     * @return the producer count
+     */
+    public int getProducers()
+    {
+        return producers.get();
+    }
+
+
+    /**
+     * Stops collecting, passing on the events held for reordering, and
+     * removes the socket file
+     *
+     * @throws IOException
+     *             closing the socket
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        selector.wakeup();
+        try
+        {
+            loop.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        Files.deleteIfExists(socket);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Collector thread loop
+     */
+    private void run()
+    {
+        try
+        {
+            while (!closed)
+            {
+                selector.select(Math.max(1, windowMillis));
+                for (SelectionKey key : selector.selectedKeys())
+                {
+                    if (key.isAcceptable())
+                        accept();
+                    else if (key.isReadable())
+                        read(key);
+                }
+                selector.selectedKeys().clear();
+                emit(System.currentTimeMillis() - windowMillis);
+            }
+        }
+        catch (IOException e)
+        /*
+         * Selector or server failure ends collection
+         */
+        {
+        }
+        finally
+        {
+            emit(Long.MAX_VALUE);
+            for (SelectionKey key : selector.keys())
+                close(key);
+            try
+            {
+                selector.close();
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+
+    /**
+     * Accepts a producer
+     *
+     * @throws IOException
+     *             from the server channel
+     */
+    private void accept() throws IOException
+    {
+        SocketChannel producer = server.accept();
+        if (producer == null)
+            return;
+        producer.configureBlocking(false);
+        producer.register(selector, SelectionKey.OP_READ,
+                ByteBuffer.allocate(BUFFER_SIZE));
+        producers.incrementAndGet();
+    }
+
+
+    /**
+     * Reads and decodes a producer's frames
+     *
+     * @param key
+     *            the producer's key
+     */
+    private void read(SelectionKey key)
+    {
+        SocketChannel producer = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        try
+        {
+            if (!buffer.hasRemaining())
+            /*
+             * A frame larger than the buffer
+             */
+            {
+                buffer = ByteBuffer.allocate(Math.min(
+                        buffer.capacity() * 2,
+                        EventCodec.HEADER + EventCodec.MAX_BODY))
+                        .put(buffer.flip());
+                key.attach(buffer);
+            }
+            int n = producer.read(buffer);
+
+            buffer.flip();
+            for (InterceptedEvent event; (event =
+                    EventCodec.decode(buffer)) != null;)
+            {
+                received.incrementAndGet();
+                pending.add(event);
+            }
+            buffer.compact();
+
+            if (n < 0)
+            {
+                producers.decrementAndGet();
+                close(key);
+            }
+        }
+        catch (IOException | IllegalArgumentException e)
+        /*
+         * Broken connection or malformed stream, drop the producer
+         */
+        {
+            producers.decrementAndGet();
+            close(key);
+        }
+    }
+
+
+    /**
+     * Passes on held events in timestamp order
+     *
+     * @param upTo
+     *            the latest timestamp to pass on
+     */
+    private void emit(long upTo)
+    {
+        while (!pending.isEmpty() && pending.peek().getTimestamp() <= upTo)
+        {
+            InterceptedEvent event = pending.poll();
+            if (event.getTimestamp() < emitted)
+                late.incrementAndGet();
+            else
+                emitted = event.getTimestamp();
+            try
+            {
+                consumer.accept(event);
+            }
+            catch (RuntimeException e)
+            /*
+             * A failing consumer must not stop collection
+             */
+            {
+            }
+        }
+    }
+
+
+    /**
+     * Closes a key's channel
+     *
+     * @param key
+     *            the key
+     */
+    private static void close(SelectionKey key)
+    {
+        key.cancel();
+        try
+        {
+            key.channel().close();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+}
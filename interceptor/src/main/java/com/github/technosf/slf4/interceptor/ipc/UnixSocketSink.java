@@ -0,0 +1,407 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.ipc;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+import com.github.technosf.slf4.interceptor.jfr.QueueOverflowEvent;
+
+/**
+ * Streams intercepted events to a {@code UnixSocketCollector}
+ * <p>
+ * Events are offered to a bounded queue, never blocking the logging thread,
+ * and events that do not fit are dropped and counted. A writer thread
+ * connects to the collector's Unix domain socket, encodes queued events with
+ * {@code EventCodec} and writes them in batches. While the collector is
+ * unreachable events wait in the queue and the writer retries with a backoff,
+ * so logging continues undisturbed through collector restarts.
+ * <p>
+ * The sink is a {@code Flow.Subscriber}, so it can be subscribed to
+ * {@code Interceptor.getEventPublisher()}.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class UnixSocketSink
+        implements Flow.Subscriber<InterceptedEvent>, AutoCloseable
+{
+
+    /**
+     * Sink thread numbering
+     */
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    /**
+     * Longest wait between connection attempts
+     */
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    /**
+     * Largest batch written at once, in bytes
+     */
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    /**
+     * The collector address
+     */
+    private final UnixDomainSocketAddress address;
+
+    /**
+     * Events waiting to be written
+     */
+    private final BlockingQueue<InterceptedEvent> queue;
+
+    /**
+     * The writer thread
+     */
+    private final Thread writer;
+
+    /**
+     * Events dropped on a full queue, or lost with a broken connection
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Events written
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * Connections made
+     */
+    private final AtomicLong connections = new AtomicLong();
+
+    /**
+     * The connection, only used by the writer thread
+     */
+    private SocketChannel channel;
+
+    /**
+     * The event subscription, if subscribed
+     */
+    private volatile Flow.Subscription subscription;
+
+    /**
+     * True once closed
+     */
+    private volatile boolean closed;
+
+
+    /**
+     * Creates a sink with a daemon writer thread
+     *
+     * @param socket
+     *            the collector's socket file
+     * @param capacity
+     *            the events queued while writing or disconnected
+     */
+    public UnixSocketSink(Path socket, int capacity)
+    {
+        this(socket, capacity, r -> {
+            Thread thread = new Thread(r,
+                    "UnixSocketSink-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Creates a sink
+     *
+     * @param socket
+     *            the collector's socket file
+     * @param capacity
+     *            the events queued while writing or disconnected
+     * @param threadFactory
+     *            factory for the writer thread
+     */
+    public UnixSocketSink(Path socket, int capacity,
+            ThreadFactory threadFactory)
+    {
+        address = UnixDomainSocketAddress.of(socket);
+        queue = new ArrayBlockingQueue<>(capacity);
+        writer = threadFactory.newThread(this::write);
+        writer.start();
+    }
+
+
+    /**
+     * Queues an event without blocking, dropping it if the queue is full
+     *
+     * @param event
+     *            the event
+     * @return true if queued
+     */
+    public boolean offer(InterceptedEvent event)
+    {
+        if (!closed && queue.offer(event))
+            return true;
+        dropped.incrementAndGet();
+        QueueOverflowEvent.emit("UnixSocketSink", "DROP_NEWEST", 1, 0);
+        return false;
+    }
+
+
+    /**
+     * Returns the number of events dropped on a full queue or lost with a
+     * broken connection
+     *
+     * @return the dropped event count
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+
+    /**
+     * Returns the number of events written
+     *
+     * @return the written event count
+     */
+    public long getWritten()
+    {
+        return written.get();
+    }
+
+
+    /**
+     * Returns the number of connections made to the collector
+     *
+     * @return the connection count
+     */
+    public long getConnections()
+    {
+        return connections.get();
+    }
+
+
+    /**
+     * Returns the number of events waiting to be written
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+
+    @Override
+    public void onNext(InterceptedEvent event)
+    {
+        offer(event);
+    }
+
+
+    @Override
+    public void onError(Throwable throwable)
+    {
+        close();
+    }
+
+
+    @Override
+    public void onComplete()
+    {
+        close();
+    }
+
+
+    /**
+     * Stops accepting events and waits briefly for queued events to be
+     * written
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        Flow.Subscription s = subscription;
+        if (s != null)
+            s.cancel();
+        try
+        {
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        writer.interrupt();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Writer thread loop
+     */
+    private void write()
+    {
+        List<InterceptedEvent> batch = new ArrayList<>();
+        long backoff = 0;
+        while (!(closed && queue.isEmpty()))
+        {
+            try
+            {
+                if (channel == null && !connect())
+                /*
+                 * Collector unreachable, events wait in the queue
+                 */
+                {
+                    if (closed)
+                        break;
+                    backoff = Math.min(MAX_BACKOFF_MILLIS,
+                            Math.max(50, backoff * 2));
+                    Thread.sleep(backoff);
+                    continue;
+                }
+                backoff = 0;
+
+                InterceptedEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                send(batch);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+            catch (IOException e)
+            /*
+             * Connection broken, the batch in flight is lost
+             */
+            {
+                dropped.addAndGet(batch.size());
+                disconnect();
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+        dropped.addAndGet(queue.size());
+        queue.clear();
+        disconnect();
+    }
+
+
+    /**
+     * Encodes and writes a batch of queued events
+     *
+     * @param batch
+     *            the batch, holding its first event
+     * @throws IOException
+     *             writing to the channel
+     */
+    private void send(List<InterceptedEvent> batch) throws IOException
+    {
+        List<byte[]> frames = new ArrayList<>();
+        int bytes = 0;
+        for (InterceptedEvent event = batch.get(0); event != null;)
+        {
+            byte[] frame = EventCodec.encode(event);
+            frames.add(frame);
+            bytes += frame.length;
+            if (bytes >= MAX_BATCH_BYTES)
+                break;
+            event = queue.poll();
+            if (event != null)
+                batch.add(event);
+        }
+
+        ByteBuffer[] buffers = new ByteBuffer[frames.size()];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = ByteBuffer.wrap(frames.get(i));
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining())
+            channel.write(buffers);
+        written.addAndGet(batch.size());
+    }
+
+
+    /**
+     * Attempts to connect to the collector
+     *
+     * @return true if connected
+     */
+    private boolean connect()
+    {
+        try
+        {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(address);
+            connections.incrementAndGet();
+            return true;
+        }
+        catch (IOException e)
+        {
+            disconnect();
+            return false;
+        }
+    }
+
+
+    /**
+     * Closes the connection
+     */
+    private void disconnect()
+    {
+        if (channel == null)
+            return;
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        /*
+         * Nothing more to do with it
+         */
+        {
+        }
+        channel = null;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.jfr;
+
+import com.github.technosf.slf4.interceptor.InterceptorMetrics.Outcome;
+import com.github.technosf.slf4.interceptor.LogLevel;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for an intercepted log call
+ * <p>
+ * Committed for calls slower than the threshold, 20 microseconds unless
+ * configured otherwise, while a recording enables it.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+@Name("com.github.technosf.slf4.interceptor.Intercept")
+@Label("Log Intercept")
+@Category("SLF4J Interceptor")
+@Description("A log call through the interceptor")
+@Threshold("20 us")
+@StackTrace(false)
+public final class InterceptEvent
+        extends Event
+{
+
+    /**
+     * Log level
+     */
+    @Label("Level")
+    private String level;
+
+    /**
+     * Logger name
+     */
+    @Label("Logger")
+    private String logger;
+
+    /**
+     * What became of the call
+     */
+    @Label("Outcome")
+    private String outcome;
+
+    /**
+     * Time formatting the message
+     */
+    @Label("Format Time")
+    @Timespan(Timespan.NANOSECONDS)
+    private long formatNanos;
+
+    /**
+     * Time writing the message to the sinks
+     */
+    @Label("Sink Time")
+    @Timespan(Timespan.NANOSECONDS)
+    private long sinkNanos;
+
+    /**
+     * Time matching the filter
+     */
+    @Label("Filter Time")
+    @Timespan(Timespan.NANOSECONDS)
+    private long filterNanos;
+
+
+    /**
+     * Starts timing a log call
+     *
+     * @return the event, or null if no recording enables it
+     */
+    public static InterceptEvent start()
+    {
+        InterceptEvent event = new InterceptEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+
+    /**
+     * @param nanos
+     *            the time formatting the message
+     */
+    public void setFormatNanos(long nanos)
+    {
+        formatNanos = nanos;
+    }
+
+
+    /**
+     * @param nanos
+     *            the time writing the message to the sinks
+     */
+    public void setSinkNanos(long nanos)
+    {
+        sinkNanos = nanos;
+    }
+
+
+    /**
+     * @param nanos
+     *            the time matching the filter
+     */
+    public void setFilterNanos(long nanos)
+    {
+        filterNanos = nanos;
+    }
+
+
+    /**
+     * Ends timing and commits the event if over the threshold
+     *
+     * @param level
+     *            the log level
+     * @param logger
+     *            the logger name
+     * @param outcome
+     *            what became of the call
+     */
+    public void finish(LogLevel level, String logger, Outcome outcome)
+    {
+        end();
+        if (shouldCommit())
+        {
+            this.level = level.name();
+            this.logger = logger;
+            this.outcome = outcome.name();
+            commit();
+        }
+    }
+}
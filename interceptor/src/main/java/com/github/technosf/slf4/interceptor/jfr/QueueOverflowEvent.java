@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for output dropped by a full queue or buffer
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+@Name("com.github.technosf.slf4.interceptor.QueueOverflow")
+@Label("Queue Overflow")
+@Category("SLF4J Interceptor")
+@Description("Output dropped by the overflow policy of a full queue or buffer")
+public final class QueueOverflowEvent
+        extends Event
+{
+
+    /**
+     * The overflowing queue
+     */
+    @Label("Queue")
+    private String queue;
+
+    /**
+     * The overflow policy applied
+     */
+    @Label("Policy")
+    private String policy;
+
+    /**
+     * Items dropped
+     */
+    @Label("Dropped Items")
+    private long droppedItems;
+
+    /**
+     * Bytes dropped, zero if not known
+     */
+    @Label("Dropped Bytes")
+    @DataAmount
+    private long droppedBytes;
+
+
+    /**
+     * Commits an event if a recording enables it
+     *
+     * @param queue
+     *            the overflowing queue
+     * @param policy
+     *            the overflow policy applied
+     * @param items
+     *            the items dropped
+     * @param bytes
+     *            the bytes dropped, zero if not known
+     */
+    public static void emit(String queue, String policy, long items,
+            long bytes)
+    {
+        QueueOverflowEvent event = new QueueOverflowEvent();
+        if (event.shouldCommit())
+        {
+            event.queue = queue;
+            event.policy = policy;
+            event.droppedItems = items;
+            event.droppedBytes = bytes;
+            event.commit();
+        }
+    }
+}
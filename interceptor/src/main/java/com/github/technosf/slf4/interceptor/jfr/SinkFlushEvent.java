@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a flush publishing buffered output to the
+ * subscribers of a sink
+ * <p>
+ * Committed for flushes slower than the threshold, 100 microseconds unless
+ * configured otherwise, while a recording enables it.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+@Name("com.github.technosf.slf4.interceptor.SinkFlush")
+@Label("Sink Flush")
+@Category("SLF4J Interceptor")
+@Description("Buffered output published to the subscribers of a sink")
+@Threshold("100 us")
+@StackTrace(false)
+public final class SinkFlushEvent
+        extends Event
+{
+
+    /**
+     * Bytes published
+     */
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    /**
+     * Subscribers published to
+     */
+    @Label("Subscribers")
+    private int subscribers;
+
+
+    /**
+     * Starts timing a flush
+     *
+     * @return the event, or null if no recording enables it
+     */
+    public static SinkFlushEvent start()
+    {
+        SinkFlushEvent event = new SinkFlushEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+
+    /**
+     * Ends timing and commits the event if over the threshold
+     *
+     * @param bytes
+     *            the bytes published
+     * @param subscribers
+     *            the subscribers published to
+     */
+    public void finish(long bytes, int subscribers)
+    {
+        end();
+        if (shouldCommit())
+        {
+            this.bytes = bytes;
+            this.subscribers = subscribers;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.github.technosf.slf4.interceptor.FormatProfiler;
+import com.github.technosf.slf4.interceptor.HeavyHitters;
+import com.github.technosf.slf4.interceptor.Interceptor.Mode;
+import com.github.technosf.slf4.interceptor.InterceptorMetrics;
+import com.github.technosf.slf4.interceptor.InterceptorMetrics.Outcome;
+import com.github.technosf.slf4.interceptor.LogLevel;
+import com.github.technosf.slf4.interceptor.LogRates;
+import com.github.technosf.slf4.interceptor.base.AbstractInterceptor;
+import com.github.technosf.slf4.interceptor.util.SpaceSaving;
+
+/**
+ * {@code InterceptorMXBean} over the class level configuration of
+ * {@code AbstractInterceptor}
+ * <p>
+ * Mode and filter changes replace the interceptor's configuration snapshot
+ * in one step, so logging threads carry on without locking and each log call
+ * sees either the old or the new configuration, never a mix.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class InterceptorControl
+        implements InterceptorMXBean
+{
+
+    /**
+     * The object name the control is registered under
+     */
+    public static final String OBJECT_NAME =
+            "com.github.technosf.slf4.interceptor:type=Interceptor";
+
+
+    /**
+     * Registers a control with the platform MBean server
+     *
+     * @return the object name registered
+     * @throws JMException
+     *             if the control cannot be registered, e.g. if already
+     *             registered
+     */
+    public static ObjectName register() throws JMException
+    {
+        return register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+
+    /**
+     * Registers a control with an MBean server
+     *
+     * @param server
+     *            the MBean server
+     * @return the object name registered
+     * @throws JMException
+     *             if the control cannot be registered, e.g. if already
+     *             registered
+     */
+    public static ObjectName register(MBeanServer server) throws JMException
+    {
+        return server.registerMBean(new InterceptorControl(),
+                new ObjectName(OBJECT_NAME)).getObjectName();
+    }
+
+
+    /**
+     * Unregisters the control from the platform MBean server, if registered
+     *
+     * @throws JMException
+     *             if the control cannot be unregistered
+     */
+    public static void unregister() throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public String getMode()
+    {
+        return AbstractInterceptor.getInterceptorMode().name();
+    }
+
+
+    @Override
+    public void setMode(String mode)
+    {
+        AbstractInterceptor.setInterceptorMode(mode(mode));
+    }
+
+
+    @Override
+    public String getFilter()
+    {
+        return AbstractInterceptor.getInterceptorFilter();
+    }
+
+
+    @Override
+    public void setFilter(String filterRegex)
+    {
+        AbstractInterceptor.setInterceptorFilter(filterRegex);
+    }
+
+
+    @Override
+    public void configure(String mode, String filterRegex)
+    {
+        AbstractInterceptor.setInterceptorConfig(mode(mode), filterRegex);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public boolean isOutputStreamSet()
+    {
+        return AbstractInterceptor.hasInterceptOutputStream();
+    }
+
+
+    @Override
+    public int getTailCapacity()
+    {
+        return AbstractInterceptor.getInterceptTailCapacity();
+    }
+
+
+    @Override
+    public void setTailCapacity(int capacity)
+    {
+        AbstractInterceptor.setInterceptTailCapacity(capacity);
+    }
+
+
+    @Override
+    public long getTailLag()
+    {
+        return AbstractInterceptor.getInterceptTailLag();
+    }
+
+
+    @Override
+    public int getEventSubscribers()
+    {
+        return AbstractInterceptor.getInterceptEventSubscribers();
+    }
+
+
+    @Override
+    public long getEventQueueDepth()
+    {
+        return AbstractInterceptor.getInterceptEventQueueDepth();
+    }
+
+
+    @Override
+    public long getEventsDropped()
+    {
+        return AbstractInterceptor.getInterceptEventsDropped();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public boolean isMetricsEnabled()
+    {
+        return AbstractInterceptor.getInterceptMetrics() != null;
+    }
+
+
+    @Override
+    public void setMetricsEnabled(boolean enabled)
+    {
+        if (enabled != isMetricsEnabled())
+            AbstractInterceptor.setInterceptMetrics(enabled);
+    }
+
+
+    @Override
+    public void resetMetrics()
+    {
+        InterceptorMetrics metrics = AbstractInterceptor.getInterceptMetrics();
+        if (metrics != null)
+            metrics.reset();
+    }
+
+
+    @Override
+    public long getInterceptedCount()
+    {
+        InterceptorMetrics.Snapshot snapshot = snapshot();
+        return snapshot == null ? 0 : snapshot.getTotal();
+    }
+
+
+    @Override
+    public long getAbsorbedCount()
+    {
+        return count(Outcome.ABSORBED);
+    }
+
+
+    @Override
+    public long getPassedCount()
+    {
+        return count(Outcome.PASSED);
+    }
+
+
+    @Override
+    public long getFilteredCount()
+    {
+        return count(Outcome.FILTERED);
+    }
+
+
+    @Override
+    public long getDuplicatedCount()
+    {
+        return count(Outcome.DUPLICATED);
+    }
+
+
+    @Override
+    public double getInterceptLatencyMean()
+    {
+        InterceptorMetrics.Snapshot snapshot = snapshot();
+        return snapshot == null ? 0
+                : snapshot.getInterceptLatency().getMean();
+    }
+
+
+    @Override
+    public long getInterceptLatency99()
+    {
+        InterceptorMetrics.Snapshot snapshot = snapshot();
+        return snapshot == null ? 0
+                : snapshot.getInterceptLatency().getPercentile(99);
+    }
+
+
+    @Override
+    public long getSinkLatency99()
+    {
+        InterceptorMetrics.Snapshot snapshot = snapshot();
+        return snapshot == null ? 0
+                : snapshot.getSinkLatency().getPercentile(99);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public boolean isProfilerEnabled()
+    {
+        return AbstractInterceptor.getInterceptProfiler() != null;
+    }
+
+
+    @Override
+    public void setProfilerEnabled(boolean enabled)
+    {
+        if (enabled != isProfilerEnabled())
+            AbstractInterceptor.setInterceptProfiler(enabled);
+    }
+
+
+    @Override
+    public void resetProfiler()
+    {
+        FormatProfiler profiler = AbstractInterceptor.getInterceptProfiler();
+        if (profiler != null)
+            profiler.reset();
+    }
+
+
+    @Override
+    public String[] topFormats(int n)
+    {
+        FormatProfiler profiler = AbstractInterceptor.getInterceptProfiler();
+        if (profiler == null)
+            return new String[0];
+        return profiler.getTop(n).stream().map(Object::toString)
+                .toArray(String[]::new);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public int getHeavyHitterCapacity()
+    {
+        HeavyHitters hitters = AbstractInterceptor.getInterceptHeavyHitters();
+        return hitters == null ? 0 : hitters.getLoggers().getCapacity();
+    }
+
+
+    @Override
+    public void setHeavyHitterCapacity(int capacity)
+    {
+        AbstractInterceptor.setInterceptHeavyHitters(capacity);
+    }
+
+
+    @Override
+    public String[] noisiestLoggers(int n)
+    {
+        HeavyHitters hitters = AbstractInterceptor.getInterceptHeavyHitters();
+        return hitters == null ? new String[0] : top(hitters.getLoggers(), n);
+    }
+
+
+    @Override
+    public String[] noisiestFormats(int n)
+    {
+        HeavyHitters hitters = AbstractInterceptor.getInterceptHeavyHitters();
+        return hitters == null ? new String[0] : top(hitters.getFormats(), n);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    @Override
+    public long getRateHistorySeconds()
+    {
+        LogRates rates = AbstractInterceptor.getInterceptRates();
+        return rates == null ? 0
+                : TimeUnit.MILLISECONDS.toSeconds(rates.getHistoryMillis());
+    }
+
+
+    @Override
+    public void setRateHistorySeconds(long seconds)
+    {
+        AbstractInterceptor.setInterceptRates(seconds, TimeUnit.SECONDS);
+    }
+
+
+    @Override
+    public double rate(String logger, String level, int seconds)
+    {
+        LogRates rates = AbstractInterceptor.getInterceptRates();
+        if (rates == null)
+            return 0;
+        String name = logger == null || logger.isEmpty() ? null : logger;
+        LogLevel l = level == null || level.isEmpty() ? null
+                : LogLevel.valueOf(level.trim().toUpperCase(Locale.ROOT));
+        return rates.getRate(name, l, seconds, TimeUnit.SECONDS);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Parses a mode name
+     *
+     * @param mode
+     *            the name, in any case
+     * @return the mode
+     * @throws IllegalArgumentException
+     *             if there is no such mode
+     */
+    private static Mode mode(String mode)
+    {
+        return Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+
+
+    /**
+     * @return a metrics snapshot, or null if metrics are disabled
+     */
+    private static InterceptorMetrics.Snapshot snapshot()
+    {
+        InterceptorMetrics metrics = AbstractInterceptor.getInterceptMetrics();
+        return metrics == null ? null : metrics.snapshot();
+    }
+
+
+    /**
+     * @param sketch
+     *            a top-K tracker
+     * @param n
+     *            the number of keys to return
+     * @return descriptions of up to {@code n} keys, highest count first
+     */
+    private static String[] top(SpaceSaving<String> sketch, int n)
+    {
+        return sketch.getTop(n).stream().map(Object::toString)
+                .toArray(String[]::new);
+    }
+
+
+    /**
+     * @param outcome
+     *            an outcome
+     * @return the count of calls with the outcome, 0 if metrics are disabled
+     */
+    private static long count(Outcome outcome)
+    {
+        InterceptorMetrics.Snapshot snapshot = snapshot();
+        return snapshot == null ? 0 : snapshot.getCount(outcome);
+    }
+}
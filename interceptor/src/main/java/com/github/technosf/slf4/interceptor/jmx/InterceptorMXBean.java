@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.jmx;
+
+/**
+ * Management interface of the interceptor
+ * <p>
+ * Configuration set here applies to every {@code LoggerInterceptor} at once.
+ * Counts and latencies are read from the interceptor metrics, and are zero
+ * while metrics are disabled.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public interface InterceptorMXBean
+{
+
+    /**
+     * @return the intercept mode name
+     */
+    String getMode();
+
+
+    /**
+     * @param mode
+     *            the intercept mode name
+     */
+    void setMode(String mode);
+
+
+    /**
+     * @return the filter regex
+     */
+    String getFilter();
+
+
+    /**
+     * @param filterRegex
+     *            the filter regex, match-all if empty
+     */
+    void setFilter(String filterRegex);
+
+
+    /**
+     * Sets the mode and filter together
+     *
+     * @param mode
+     *            the intercept mode name
+     * @param filterRegex
+     *            the filter regex, match-all if empty
+     */
+    void configure(String mode, String filterRegex);
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return true if intercepted messages are copied to an output stream
+     */
+    boolean isOutputStreamSet();
+
+
+    /**
+     * @return the tail ring capacity in bytes, zero if disabled
+     */
+    int getTailCapacity();
+
+
+    /**
+     * @param capacity
+     *            the tail ring capacity in bytes, zero to disable
+     */
+    void setTailCapacity(int capacity);
+
+
+    /**
+     * @return the largest tail reader lag in bytes
+     */
+    long getTailLag();
+
+
+    /**
+     * @return the number of intercepted event subscribers
+     */
+    int getEventSubscribers();
+
+
+    /**
+     * @return the intercepted events queued for subscribers
+     */
+    long getEventQueueDepth();
+
+
+    /**
+     * @return the intercepted events dropped by full subscriber queues
+     */
+    long getEventsDropped();
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return true if metrics are recorded
+     */
+    boolean isMetricsEnabled();
+
+
+    /**
+     * @param enabled
+     *            true to record metrics
+     */
+    void setMetricsEnabled(boolean enabled);
+
+
+    /**
+     * Clears the metrics
+     */
+    void resetMetrics();
+
+
+    /**
+     * @return the log calls made through interceptors, whatever their outcome
+     */
+    long getInterceptedCount();
+
+
+    /**
+     * @return the log calls neither intercepted nor logged
+     */
+    long getAbsorbedCount();
+
+
+    /**
+     * @return the log calls logged without being intercepted
+     */
+    long getPassedCount();
+
+
+    /**
+     * @return the log calls intercepted and withheld from the logger
+     */
+    long getFilteredCount();
+
+
+    /**
+     * @return the log calls intercepted and logged
+     */
+    long getDuplicatedCount();
+
+
+    /**
+     * @return the mean {@code intercept} latency in nanoseconds
+     */
+    double getInterceptLatencyMean();
+
+
+    /**
+     * @return the 99th percentile {@code intercept} latency in nanoseconds,
+     *         to within a factor of two
+     */
+    long getInterceptLatency99();
+
+
+    /**
+     * @return the 99th percentile sink write latency in nanoseconds, to within
+     *         a factor of two
+     */
+    long getSinkLatency99();
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return true if format strings are profiled
+     */
+    boolean isProfilerEnabled();
+
+
+    /**
+     * @param enabled
+     *            true to profile format strings
+     */
+    void setProfilerEnabled(boolean enabled);
+
+
+    /**
+     * Clears the format string profile
+     */
+    void resetProfiler();
+
+
+    /**
+     * Returns the most costly format strings
+     *
+     * @param n
+     *            the number of format strings to return
+     * @return descriptions of up to {@code n} format strings, most total
+     *         nanoseconds first, empty if the profiler is disabled
+     */
+    String[] topFormats(int n);
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return the number of loggers and of format strings counted in the
+     *         noisiest source trackers, zero if disabled
+     */
+    int getHeavyHitterCapacity();
+
+
+    /**
+     * Replaces the noisiest source trackers with new, empty ones
+     *
+     * @param capacity
+     *            the number of loggers and of format strings to count, zero
+     *            to disable tracking
+     */
+    void setHeavyHitterCapacity(int capacity);
+
+
+    /**
+     * Returns the loggers with the most log calls
+     *
+     * @param n
+     *            the number of loggers to return
+     * @return descriptions of up to {@code n} loggers, noisiest first, empty
+     *         if tracking is disabled
+     */
+    String[] noisiestLoggers(int n);
+
+
+    /**
+     * Returns the format strings with the most log calls
+     *
+     * @param n
+     *            the number of format strings to return
+     * @return descriptions of up to {@code n} format strings, noisiest
+     *         first, empty if tracking is disabled
+     */
+    String[] noisiestFormats(int n);
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return the history window of per second log call counts in seconds,
+     *         zero if disabled
+     */
+    long getRateHistorySeconds();
+
+
+    /**
+     * Replaces the per second log call counts with new, empty ones
+     *
+     * @param seconds
+     *            the history window in seconds, zero to disable counting
+     */
+    void setRateHistorySeconds(long seconds);
+
+
+    /**
+     * Returns the rate of log calls over a recent period
+     *
+     * @param logger
+     *            the logger name, empty for all loggers
+     * @param level
+     *            the log level name, empty for all levels
+     * @param seconds
+     *            the period in seconds, up to the history window
+     * @return the log calls per second, zero if disabled
+     */
+    double rate(String logger, String level, int seconds);
+}
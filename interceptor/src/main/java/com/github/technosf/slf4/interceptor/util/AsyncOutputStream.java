@@ -0,0 +1,557 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.technosf.slf4.interceptor.jfr.QueueOverflowEvent;
+
+/**
+ * Asynchronous OutputStream
+ * <p>
+ * Decouples a slow {@code OutputStream} from the threads writing to it. Writes
+ * are accumulated until {@code flush}, when they are handed as one batch to a
+ * bounded queue that is drained onto the target stream by a dedicated thread.
+ * The thread is created from a supplied {@code ThreadFactory}, so the drain
+ * thread may be a platform thread or, on runtimes that support them, a virtual
+ * thread.
+ * <p>
+ * What happens when the queue is full is determined by the
+ * {@code OverflowPolicy}.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class AsyncOutputStream
+        extends OutputStream
+{
+
+    /**
+     * Policy applied when a batch is flushed onto a full queue
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Block the flushing thread until there is room on the queue
+         */
+        BLOCK,
+
+        /**
+         * Drop the batch being flushed
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drop the oldest queued batches to make room
+         */
+        DROP_OLDEST,
+
+        /**
+         * Close this stream, so the subscriber is disconnected
+         */
+        DISCONNECT
+    }
+
+    /**
+     * Queue sentinel signalling the drain thread to close the target
+     */
+    private static final byte[] CLOSE = new byte[0];
+
+    /**
+     * Default drain thread sequence
+     */
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    /**
+     * The stream being written to asynchronously
+     */
+    private final OutputStream target;
+
+    /**
+     * Batches waiting to be written to the target
+     */
+    private final BlockingQueue<byte[]> queue;
+
+    /**
+     * The full queue policy
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * Writes accumulated since the last flush
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Lock on {@code pending}
+     */
+    private final ReentrantLock pendingLock = new ReentrantLock();
+
+    /**
+     * Bytes queued but not yet written to the target
+     */
+    private final AtomicLong lag = new AtomicLong();
+
+    /**
+     * Batches and bytes dropped
+     */
+    private final AtomicLong droppedBatches = new AtomicLong(),
+            droppedBytes = new AtomicLong();
+
+    /**
+     * Set once this stream is closed or has failed
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The exception that stopped the drain thread, if any
+     */
+    private volatile IOException failure;
+
+
+    /**
+     * Creates an async stream drained by a daemon platform thread
+     *
+     * @param target
+     *            the stream to write to
+     * @param capacity
+     *            the maximum number of flushed batches queued
+     * @param policy
+     *            the full queue policy
+     */
+    public AsyncOutputStream(OutputStream target, int capacity,
+            OverflowPolicy policy)
+    {
+        this(target, capacity, policy, r -> {
+            Thread t = new Thread(r, "AsyncOutputStream-"
+                    + THREAD_SEQUENCE.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+
+    /**
+     * Creates an async stream drained by a thread from the given factory
+     *
+     * @param target
+     *            the stream to write to
+     * @param capacity
+     *            the maximum number of flushed batches queued
+     * @param policy
+     *            the full queue policy
+     * @param threadFactory
+     *            creates the drain thread, e.g. a virtual thread factory
+     */
+    public AsyncOutputStream(OutputStream target, int capacity,
+            OverflowPolicy policy, ThreadFactory threadFactory)
+    {
+        if (target == null || policy == null || threadFactory == null)
+            throw new NullPointerException();
+
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        threadFactory.newThread(this::drain).start();
+    }
+
+
+    /* ----------------------------------------------------------------
+     *
+     * Statistics
+     *
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the target stream
+     *
+     * @return the stream being written to asynchronously
+     */
+    public OutputStream getOutputStream()
+    {
+        return target;
+    }
+
+
+    /**
+     * Returns the full queue policy
+     *
+     * @return the policy
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return policy;
+    }
+
+
+    /**
+     * Returns the number of bytes flushed to this stream but not yet written
+     * to the target
+     *
+     * @return the lag in bytes
+     */
+    public long getLag()
+    {
+        return lag.get();
+    }
+
+
+    /**
+     * Returns the number of batches waiting to be written to the target
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+
+    /**
+     * Returns the number of flushed batches dropped
+     *
+     * @return the dropped batch count
+     */
+    public long getDroppedBatches()
+    {
+        return droppedBatches.get();
+    }
+
+
+    /**
+     * Returns the number of flushed bytes dropped
+     *
+     * @return the dropped byte count
+     */
+    public long getDroppedBytes()
+    {
+        return droppedBytes.get();
+    }
+
+
+    /**
+     * Has this stream been closed or disconnected?
+     *
+     * @return true if closed
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+
+    /* ----------------------------------------------------------------
+     *
+     * OutputStream Methods
+     *
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        pendingLock.lock();
+        try
+        {
+            ensureOpen();
+            pending.write(b);
+        }
+        finally
+        {
+            pendingLock.unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        pendingLock.lock();
+        try
+        {
+            ensureOpen();
+            pending.write(b, off, len);
+        }
+        finally
+        {
+            pendingLock.unlock();
+        }
+    }
+
+
+    /**
+     * Queues the writes accumulated since the last flush as one batch,
+     * applying the overflow policy if the queue is full.
+     *
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        byte[] batch;
+        pendingLock.lock();
+        try
+        {
+            ensureOpen();
+            if (pending.size() == 0)
+                return;
+            batch = pending.toByteArray();
+            pending.reset();
+        }
+        finally
+        {
+            pendingLock.unlock();
+        }
+        enqueue(batch);
+    }
+
+
+    /**
+     * Flushes pending writes and has the drain thread close the target once
+     * the queue has been written.
+     *
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        flush();
+        closed = true;
+        try
+        {
+            queue.put(CLOSE);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted closing stream");
+        }
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Throws if this stream can no longer be written to
+     *
+     * @throws IOException
+     *             if closed or the target has failed
+     */
+    private void ensureOpen() throws IOException
+    {
+        if (failure != null)
+            throw new IOException("Asynchronous write failed", failure);
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+
+
+    /**
+     * Queues a batch according to the overflow policy
+     *
+     * @param batch
+     *            the batch to queue
+     * @throws IOException
+     *             if the policy disconnected this stream
+     */
+    private void enqueue(byte[] batch) throws IOException
+    {
+        lag.addAndGet(batch.length);
+
+        switch (policy)
+        {
+            case BLOCK:
+                try
+                {
+                    queue.put(batch);
+                }
+                catch (InterruptedException e)
+                {
+                    dropped(batch);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "Interrupted queuing batch");
+                }
+                break;
+
+            case DROP_NEWEST:
+                if (!queue.offer(batch))
+                    dropped(batch);
+                break;
+
+            case DROP_OLDEST:
+                while (!queue.offer(batch))
+                /*
+                 * Make room by discarding the head of the queue
+                 */
+                {
+                    byte[] oldest = queue.poll();
+                    if (oldest == CLOSE)
+                    /*
+                     * Raced a close: restore the sentinel, as nothing queued
+                     * after it would be written
+                     */
+                    {
+                        putClose();
+                        dropped(batch);
+                        break;
+                    }
+                    if (oldest != null)
+                        dropped(oldest);
+                }
+                break;
+
+            case DISCONNECT:
+                if (!queue.offer(batch))
+                /*
+                 * Too slow: drop everything and have the drain thread close
+                 */
+                {
+                    dropped(batch);
+                    closed = true;
+                    byte[] queued;
+                    while ((queued = queue.poll()) != null)
+                        if (queued != CLOSE)
+                            dropped(queued);
+                    queue.offer(CLOSE);
+                    throw new IOException(
+                            "Subscriber too slow, disconnected");
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * Queues the close sentinel, waiting for room and deferring interrupts so
+     * the drain thread is sure to see it
+     */
+    private void putClose()
+    {
+        boolean interrupted = false;
+        for (;;)
+        {
+            try
+            {
+                queue.put(CLOSE);
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+
+    /**
+     * Closes the target after the drain thread has stopped early, ignoring
+     * any further failure
+     */
+    private void closeTarget()
+    {
+        try
+        {
+            target.close();
+        }
+        catch (IOException e)
+        {
+            // Already failed or abandoned
+        }
+    }
+
+
+    /**
+     * Accounts for a dropped batch
+     *
+     * @param batch
+     *            the dropped batch
+     */
+    private void dropped(byte[] batch)
+    {
+        lag.addAndGet(-batch.length);
+        droppedBatches.incrementAndGet();
+        droppedBytes.addAndGet(batch.length);
+        QueueOverflowEvent.emit("AsyncOutputStream", policy.name(), 1,
+                batch.length);
+    }
+
+
+    /**
+     * Drain thread loop, writing queued batches to the target and flushing it
+     * whenever the queue runs dry
+     */
+    private void drain()
+    {
+        try
+        {
+            byte[] batch;
+            while ((batch = queue.take()) != CLOSE)
+            {
+                target.write(batch);
+                lag.addAndGet(-batch.length);
+                if (queue.isEmpty())
+                    target.flush();
+            }
+            target.close();
+        }
+        catch (IOException e)
+        /*
+         * Target is dead, fail subsequent writes so this stream is dropped
+         */
+        {
+            failure = e;
+            closed = true;
+            queue.clear();
+            lag.set(0);
+            closeTarget();
+        }
+        catch (InterruptedException e)
+        {
+            closed = true;
+            closeTarget();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,638 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.technosf.slf4.interceptor.jfr.QueueOverflowEvent;
+import com.github.technosf.slf4.interceptor.util.AsyncOutputStream.OverflowPolicy;
+
+/**
+ * {@code Flow.Publisher} honouring subscriber demand
+ * <p>
+ * Each subscription has a bounded queue of submitted items, delivered on an
+ * {@code Executor} only as far as the subscriber has requested them. What
+ * happens to items submitted to a full queue is set by an
+ * {@code OverflowPolicy}: {@code BLOCK} holds the submitting thread,
+ * {@code DROP_NEWEST} and {@code DROP_OLDEST} drop and count items, and
+ * {@code DISCONNECT} fails the subscriber with an error. As signals to a
+ * subscriber are serialized, that error waits for any {@code onNext} in
+ * progress; subclasses can act at once through {@code disconnected}.
+ * <p>
+ * The {@code batches} view delivers lists of up to a given number of queued
+ * items per {@code onNext}, each list counting as one item of demand, to
+ * amortize delivery overhead.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ * @param <T>
+ *            the published item type
+ */
+public class BackpressurePublisher<T>
+        implements Flow.Publisher<T>, AutoCloseable
+{
+
+    /**
+     * No subscriptions
+     */
+    private static final Subscription<?, ?>[] NO_SUBSCRIPTIONS =
+            new Subscription<?, ?>[0];
+
+    /**
+     * Executor delivering items to subscribers
+     */
+    private final Executor executor;
+
+    /**
+     * Capacity of each subscription queue
+     */
+    private final int capacity;
+
+    /**
+     * Policy for items submitted to a full queue
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * The subscriptions, copy-on-write
+     */
+    private final AtomicReference<Subscription<?, ?>[]> subscriptions =
+            new AtomicReference<>(NO_SUBSCRIPTIONS);
+
+    /**
+     * Items dropped across all subscriptions
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * True once closed
+     */
+    private volatile boolean closed;
+
+
+    /**
+     * @param executor
+     *            executor delivering items to subscribers
+     * @param capacity
+     *            capacity of each subscription queue
+     * @param policy
+     *            policy for items submitted to a full queue
+     */
+    public BackpressurePublisher(Executor executor, int capacity,
+            OverflowPolicy policy)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.concurrent.Flow.Publisher#subscribe(java.util.concurrent.Flow.Subscriber)
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber)
+    {
+        attach(new Subscription<T, T>(this, subscriber, 0));
+    }
+
+
+    /**
+     * Returns a view of this publisher delivering batches of items
+     *
+     * @param maxBatch
+     *            the most items in a batch
+     * @return the batching publisher
+     */
+    public Flow.Publisher<List<T>> batches(int maxBatch)
+    {
+        if (maxBatch <= 0)
+            throw new IllegalArgumentException("Batch size must be positive");
+        return subscriber -> attach(
+                new Subscription<T, List<T>>(this, subscriber, maxBatch));
+    }
+
+
+    /**
+     * Returns true if there are subscribers, so callers can avoid creating
+     * items no one will receive
+     *
+     * @return true if subscribed to
+     */
+    public boolean hasSubscribers()
+    {
+        return subscriptions.get().length > 0;
+    }
+
+
+    /**
+     * Returns the number of subscribers
+     *
+     * @return the subscriber count
+     */
+    public int getSubscriberCount()
+    {
+        return subscriptions.get().length;
+    }
+
+
+    /**
+     * Returns the number of items queued for subscribers and not yet delivered
+     *
+     * @return the queued item count, across all subscribers
+     */
+    public long getQueueDepth()
+    {
+        long depth = 0;
+        for (Subscription<?, ?> subscription : subscriptions.get())
+            depth += subscription.size();
+        return depth;
+    }
+
+
+    /**
+     * Returns the number of items dropped by the overflow policy
+     *
+     * @return the dropped item count
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+
+    /**
+     * Offers an item to every subscriber
+     *
+     * @param item
+     *            the item
+     */
+    @SuppressWarnings("unchecked")
+    public void submit(T item)
+    {
+        for (Subscription<?, ?> subscription : subscriptions.get())
+            ((Subscription<T, ?>) subscription).offer(item);
+    }
+
+
+    /**
+     * Completes every subscriber once its queued items are delivered. Later
+     * subscribers are completed immediately.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        for (Subscription<?, ?> subscription : subscriptions
+                .getAndSet(NO_SUBSCRIPTIONS))
+            subscription.complete(null);
+    }
+
+
+    /**
+     * Called on the submitting thread when a subscriber is disconnected for
+     * overflowing its queue, before its {@code onError} is signalled. The
+     * error follows any {@code onNext} in progress, so a subscriber blocked
+     * delivering can be unblocked here, by closing its connection say. Must
+     * not block. Does nothing by default.
+     *
+     * @param subscriber
+     *            the subscriber disconnected
+     */
+    protected void disconnected(Flow.Subscriber<?> subscriber)
+    {
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Signals a subscriber its subscription, then adds it to the
+     * subscriptions
+     *
+     * @param subscription
+     *            the subscription
+     */
+    private void attach(Subscription<?, ?> subscription)
+    {
+        subscription.subscriber.onSubscribe(subscription);
+        Subscription<?, ?>[] current, next;
+        do
+        {
+            current = subscriptions.get();
+            next = new Subscription<?, ?>[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = subscription;
+        }
+        while (!subscriptions.compareAndSet(current, next));
+
+        if (closed)
+        /*
+         * Closed while attaching
+         */
+        {
+            detach(subscription);
+            subscription.complete(null);
+        }
+    }
+
+
+    /**
+     * Removes a subscription
+     *
+     * @param subscription
+     *            the subscription
+     */
+    private void detach(Subscription<?, ?> subscription)
+    {
+        Subscription<?, ?>[] current, next;
+        do
+        {
+            current = subscriptions.get();
+            List<Subscription<?, ?>> kept = new ArrayList<>(current.length);
+            for (Subscription<?, ?> s : current)
+            {
+                if (s != subscription)
+                    kept.add(s);
+            }
+            next = kept.toArray(NO_SUBSCRIPTIONS);
+        }
+        while (!subscriptions.compareAndSet(current, next));
+    }
+
+
+    /**
+     * A subscriber's queue and demand
+     * <p>
+     * Delivery is serialized by a work-in-progress count, so at most one
+     * executor task signals the subscriber at a time.
+     *
+     * @param <T>
+     *            the published item type
+     * @param <R>
+     *            the delivered type, an item or a list of items
+     */
+    private static final class Subscription<T, R>
+            implements Flow.Subscription
+    {
+
+        /**
+         * The publisher
+         */
+        private final BackpressurePublisher<T> publisher;
+
+        /**
+         * The subscriber
+         */
+        final Flow.Subscriber<? super R> subscriber;
+
+        /**
+         * The most items per delivery, 0 when delivering single items
+         */
+        private final int batch;
+
+        /**
+         * Undelivered items, guarded by {@code lock}
+         */
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+
+        /**
+         * Lock on the queue
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Signalled when the queue has room
+         */
+        private final Condition notFull = lock.newCondition();
+
+        /**
+         * Outstanding demand
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Delivery work in progress
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+
+        /**
+         * True once cancelled or terminated
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * True once the subscription is to complete after the queue drains
+         */
+        private volatile boolean completing;
+
+        /**
+         * The error to terminate with, or null
+         */
+        private volatile Throwable error;
+
+
+        /**
+         * @param publisher
+         *            the publisher
+         * @param subscriber
+         *            the subscriber
+         * @param batch
+         *            the most items per delivery, 0 for single items
+         */
+        Subscription(BackpressurePublisher<T> publisher,
+                Flow.Subscriber<? super R> subscriber, int batch)
+        {
+            this.publisher = publisher;
+            this.subscriber = subscriber;
+            this.batch = batch;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.util.concurrent.Flow.Subscription#request(long)
+         */
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                complete(new IllegalArgumentException(
+                        "Non-positive request: " + n));
+                return;
+            }
+            demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            schedule();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.util.concurrent.Flow.Subscription#cancel()
+         */
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            publisher.detach(this);
+            lock.lock();
+            try
+            {
+                queue.clear();
+                notFull.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+
+        /**
+         * Queues an item, applying the overflow policy if the queue is full
+         *
+         * @param item
+         *            the item
+         */
+        void offer(T item)
+        {
+            boolean disconnect = false;
+            lock.lock();
+            try
+            {
+                while (queue.size() >= publisher.capacity && !cancelled)
+                {
+                    switch (publisher.policy)
+                    {
+                        case BLOCK:
+                            notFull.awaitUninterruptibly();
+                            break;
+                        case DROP_NEWEST:
+                            publisher.dropped.incrementAndGet();
+                            overflowed(1);
+                            return;
+                        case DROP_OLDEST:
+                            queue.poll();
+                            publisher.dropped.incrementAndGet();
+                            overflowed(1);
+                            break;
+                        case DISCONNECT:
+                        default:
+                            publisher.dropped.addAndGet(queue.size() + 1);
+                            overflowed(queue.size() + 1);
+                            queue.clear();
+                            publisher.detach(this);
+                            error = new IllegalStateException(
+                                    "Subscriber overflowed its queue of "
+                                            + publisher.capacity);
+                            completing = true;
+                            disconnect = true;
+                            return;
+                    }
+                }
+                if (cancelled)
+                    return;
+                queue.add(item);
+            }
+            finally
+            {
+                lock.unlock();
+                if (disconnect)
+                    publisher.disconnected(subscriber);
+                schedule();
+            }
+        }
+
+
+        /**
+         * Records items dropped by the overflow policy with the flight
+         * recorder
+         *
+         * @param items
+         *            the items dropped
+         */
+        private void overflowed(int items)
+        {
+            QueueOverflowEvent.emit("BackpressurePublisher",
+                    publisher.policy.name(), items, 0);
+        }
+
+
+        /**
+         * @return the number of undelivered items
+         */
+        int size()
+        {
+            lock.lock();
+            try
+            {
+                return queue.size();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+
+        /**
+         * Terminates the subscription once its queue has drained
+         *
+         * @param failure
+         *            the error to signal, or null to complete
+         */
+        void complete(Throwable failure)
+        {
+            if (failure != null)
+            {
+                error = failure;
+                publisher.detach(this);
+            }
+            completing = true;
+            schedule();
+        }
+
+
+        /**
+         * Schedules a delivery task unless one is in progress
+         */
+        private void schedule()
+        {
+            if (wip.getAndIncrement() == 0)
+            {
+                try
+                {
+                    publisher.executor.execute(this::drain);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    cancel();
+                    wip.set(0);
+                }
+            }
+        }
+
+
+        /**
+         * Delivers queued items as far as demand allows, then any terminal
+         * signal
+         */
+        private void drain()
+        {
+            int missed = 1;
+            do
+            {
+                while (!cancelled && demand.get() > 0)
+                {
+                    R next = poll();
+                    if (next == null)
+                        break;
+                    try
+                    {
+                        subscriber.onNext(next);
+                    }
+                    catch (Throwable t)
+                    /*
+                     * A failing subscriber is treated as cancelled
+                     */
+                    {
+                        cancel();
+                        break;
+                    }
+                    demand.getAndUpdate(
+                            d -> d == Long.MAX_VALUE ? d : d - 1);
+                }
+
+                if (!cancelled && completing
+                        && (error != null || isEmpty()))
+                {
+                    cancelled = true;
+                    publisher.detach(this);
+                    if (error != null)
+                        subscriber.onError(error);
+                    else
+                        subscriber.onComplete();
+                }
+                missed = wip.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+
+        /**
+         * @return true if no items are queued
+         */
+        private boolean isEmpty()
+        {
+            lock.lock();
+            try
+            {
+                return queue.isEmpty();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+
+        /**
+         * Takes the next item, or batch of items, from the queue
+         *
+         * @return the item or batch, or null if the queue is empty
+         */
+        @SuppressWarnings("unchecked")
+        private R poll()
+        {
+            lock.lock();
+            try
+            {
+                if (queue.isEmpty())
+                    return null;
+                notFull.signalAll();
+                if (batch == 0)
+                    return (R) queue.poll();
+
+                List<T> items = new ArrayList<>(Math.min(batch, queue.size()));
+                while (items.size() < batch && !queue.isEmpty())
+                    items.add(queue.poll());
+                return (R) items;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
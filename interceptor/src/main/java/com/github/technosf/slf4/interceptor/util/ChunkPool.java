@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of fixed size byte chunks backing {@code PublishBuffer}s
+ * <p>
+ * The pool enforces a ceiling on the number of chunks in use at once, and
+ * retains only a limited number of free chunks, so that a burst of output does
+ * not permanently inflate the heap.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+final class ChunkPool
+{
+
+    /**
+     * Size of each chunk
+     */
+    final int chunkSize;
+
+    /**
+     * Maximum chunks in use at once
+     */
+    private final int maxChunks;
+
+    /**
+     * Maximum free chunks retained for reuse
+     */
+    private final int retainChunks;
+
+    /**
+     * Free chunks
+     */
+    private final ArrayDeque<byte[]> free = new ArrayDeque<>();
+
+    /**
+     * Lock on the pool state
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Chunks in use, and the most ever in use at once
+     */
+    private int inUse, highWater;
+
+    /**
+     * Chunks allocated, and taken from the free chunks
+     */
+    private long allocated, reused;
+
+
+    /**
+     * @param chunkSize
+     *            size of each chunk
+     * @param maxBytes
+     *            ceiling on bytes in use at once
+     * @param retainBytes
+     *            bytes of free chunks to retain for reuse
+     */
+    ChunkPool(int chunkSize, long maxBytes, long retainBytes)
+    {
+        if (chunkSize <= 0 || maxBytes < chunkSize)
+            throw new IllegalArgumentException(
+                    "Chunk size must be positive and no more than the ceiling");
+        this.chunkSize = chunkSize;
+        this.maxChunks = (int) Math.min(Integer.MAX_VALUE, maxBytes / chunkSize);
+        this.retainChunks =
+                (int) Math.min(Integer.MAX_VALUE, retainBytes / chunkSize);
+    }
+
+
+    /**
+     * Takes chunks from the pool
+     *
+     * @param n
+     *            the number of chunks
+     * @param force
+     *            true to exceed the ceiling if need be
+     * @return the chunks, or null if they would exceed the ceiling
+     */
+    byte[][] take(int n, boolean force)
+    {
+        byte[][] chunks = new byte[n][];
+        lock.lock();
+        try
+        {
+            if (!force && inUse + n > maxChunks)
+                return null;
+
+            inUse += n;
+            highWater = Math.max(highWater, inUse);
+            for (int i = 0; i < n; i++)
+            {
+                chunks[i] = free.pollFirst();
+                if (chunks[i] == null)
+                    allocated++;
+                else
+                    reused++;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        for (int i = 0; i < n; i++)
+        /*
+         * Allocate outside the lock
+         */
+        {
+            if (chunks[i] == null)
+                chunks[i] = new byte[chunkSize];
+        }
+        return chunks;
+    }
+
+
+    /**
+     * Returns a chunk to the pool
+     *
+     * @param chunk
+     *            the chunk
+     */
+    void give(byte[] chunk)
+    {
+        lock.lock();
+        try
+        {
+            inUse--;
+            if (free.size() < retainChunks)
+                free.addFirst(chunk);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * @return bytes in chunks currently in use
+     */
+    long bytesInUse()
+    {
+        lock.lock();
+        try
+        {
+            return (long) inUse * chunkSize;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return the most bytes in chunks ever in use at once
+     */
+    long highWaterMark()
+    {
+        lock.lock();
+        try
+        {
+            return (long) highWater * chunkSize;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return the number of chunks allocated
+     */
+    long allocated()
+    {
+        lock.lock();
+        try
+        {
+            return allocated;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return the number of chunk takes served by reusing a free chunk
+     */
+    long reused()
+    {
+        lock.lock();
+        try
+        {
+            return reused;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies in power of two buckets
+ * <p>
+ * Bucket <em>i</em> counts latencies of at least 2<sup>i-1</sup> and less
+ * than 2<sup>i</sup> nanoseconds, bucket 0 counting zero. Each bucket is a
+ * {@code LongAdder}, so concurrent recording threads rarely contend, and a
+ * recording costs a leading zero count and an add. Percentiles read from a
+ * {@code Snapshot} are accurate to within a factor of two.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class LatencyHistogram
+{
+
+    /**
+     * Number of buckets, covering every non-negative long
+     */
+    public static final int BUCKETS = 64;
+
+    /**
+     * The buckets
+     */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    /**
+     * Sum of the recorded latencies
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Largest recorded latency
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+
+    /**
+     * Creates an empty histogram
+     */
+    public LatencyHistogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+
+    /**
+     * Records a latency
+     *
+     * @param nanos
+     *            the latency, negative values counting as zero
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+        buckets[bucket(nanos)].increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+
+    /**
+     * Returns a snapshot of the histogram. Recordings made while the snapshot
+     * is taken may be partly included.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot()
+    {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = buckets[i].sum();
+        return new Snapshot(counts, sum.sum(), max.get());
+    }
+
+
+    /**
+     * Clears the histogram. Recordings made while clearing may be lost.
+     */
+    public void reset()
+    {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+        sum.reset();
+        max.reset();
+    }
+
+
+    /**
+     * Returns the bucket of a latency
+     *
+     * @param nanos
+     *            the non-negative latency
+     * @return the bucket index
+     */
+    static int bucket(long nanos)
+    {
+        return Long.SIZE - Long.numberOfLeadingZeros(nanos);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Immutable snapshot of a histogram
+     */
+    public static final class Snapshot
+    {
+
+        /**
+         * Bucket counts
+         */
+        private final long[] counts;
+
+        /**
+         * Total count
+         */
+        private final long count;
+
+        /**
+         * Sum of latencies
+         */
+        private final long sum;
+
+        /**
+         * Largest latency
+         */
+        private final long max;
+
+
+        /**
+         * @param counts
+         *            the bucket counts
+         * @param sum
+         *            the sum of latencies
+         * @param max
+         *            the largest latency
+         */
+        Snapshot(long[] counts, long sum, long max)
+        {
+            this.counts = counts;
+            this.sum = sum;
+            this.max = max;
+            long n = 0;
+            for (long c : counts)
+                n += c;
+            count = n;
+        }
+
+
+        /**
+         * @return the number of latencies recorded
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+
+        /**
+         * @return the sum of the latencies recorded, in nanoseconds
+         */
+        public long getSum()
+        {
+            return sum;
+        }
+
+
+        /**
+         * @return the largest latency recorded, in nanoseconds
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+
+        /**
+         * @return the mean latency in nanoseconds, 0 if none recorded
+         */
+        public double getMean()
+        {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+
+        /**
+         * Returns the count of a bucket
+         *
+         * @param bucket
+         *            the bucket, counting latencies below 2<sup>bucket</sup>
+         *            nanoseconds and at least half that
+         * @return the count
+         */
+        public long getBucketCount(int bucket)
+        {
+            return counts[bucket];
+        }
+
+
+        /**
+         * Returns an upper bound of a percentile: the exclusive upper bound of
+         * the bucket holding it, or the largest latency if lower
+         *
+         * @param percentile
+         *            the percentile, from 0 to 100
+         * @return the latency in nanoseconds, 0 if none recorded
+         */
+        public long getPercentile(double percentile)
+        {
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException(
+                        "Percentile must be from 0 to 100");
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                seen += counts[i];
+                if (seen >= rank && seen > 0)
+                    return i == 0 ? 0
+                            : Math.min(max, i == BUCKETS - 1 ? Long.MAX_VALUE
+                                    : 1L << i);
+            }
+            return 0;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return "count=" + count + " mean=" + (long) getMean() + "ns p50<="
+                    + getPercentile(50) + "ns p99<=" + getPercentile(99)
+                    + "ns max=" + max + "ns";
+        }
+    }
+}
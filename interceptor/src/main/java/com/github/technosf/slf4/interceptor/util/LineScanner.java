@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Line terminator scanner
+ * <p>
+ * Finds LF (character 10) in byte arrays eight bytes at a time, treating each
+ * eight bytes as a {@code long} and testing all of its bytes at once with
+ * branch free arithmetic (SWAR). The remaining bytes are tested individually.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class LineScanner
+{
+
+    /**
+     * Line feed
+     */
+    public static final byte LF = 10;
+
+    /**
+     * Little endian long view of byte arrays, so the lowest addressed byte is
+     * the least significant
+     */
+    private static final VarHandle LONGS = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * LF in every byte
+     */
+    private static final long LFS = 0x0A0A0A0A0A0A0A0AL;
+
+    /**
+     * All but the high bit in every byte
+     */
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+
+
+    /**
+     * Not instantiable
+     */
+    private LineScanner()
+    {
+    }
+
+
+    /**
+     * Returns the index of the first LF in a range
+     *
+     * @param b
+     *            the bytes
+     * @param from
+     *            first index of the range, inclusive
+     * @param to
+     *            last index of the range, exclusive
+     * @return the index of the first LF, or -1 if there is none
+     */
+    public static int indexOf(byte[] b, int from, int to)
+    {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES)
+        {
+            long found = lineFeeds((long) LONGS.get(b, i));
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < to; i++)
+        {
+            if (b[i] == LF)
+                return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the index of the last LF in a range
+     *
+     * @param b
+     *            the bytes
+     * @param from
+     *            first index of the range, inclusive
+     * @param to
+     *            last index of the range, exclusive
+     * @return the index of the last LF, or -1 if there is none
+     */
+    public static int lastIndexOf(byte[] b, int from, int to)
+    {
+        int i = to;
+        for (; i - Long.BYTES >= from; i -= Long.BYTES)
+        {
+            long found = lineFeeds((long) LONGS.get(b, i - Long.BYTES));
+            if (found != 0)
+                return i - 1 - (Long.numberOfLeadingZeros(found) >>> 3);
+        }
+        for (i--; i >= from; i--)
+        {
+            if (b[i] == LF)
+                return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Marks the LF bytes in a word
+     *
+     * @param word
+     *            eight bytes
+     * @return a word with the high bit set in exactly the bytes that were LF
+     */
+    private static long lineFeeds(long word)
+    {
+        long x = word ^ LFS; // LF bytes become zero
+        return ~(((x & LOWS) + LOWS) | x | LOWS);
+    }
+}
@@ -0,0 +1,732 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Multicast ring buffer OutputStream
+ * <p>
+ * Bytes written are copied once into a fixed size ring, and every consumer
+ * reads them through its own {@code Cursor}, a sequence number counting the
+ * bytes it has read, in the style of a Disruptor. Unlike fanning out to
+ * subscriber streams, memory use and copying by the writer do not grow with
+ * the number of consumers.
+ * <p>
+ * Writers never wait for consumers. A consumer that falls more than the ring
+ * capacity behind is lapped: it skips to the oldest bytes still in the ring,
+ * discards up to the next LF so that it resumes on a record boundary, and
+ * counts the bytes it lost. Slow consumers can be found before that happens
+ * from their cursor lag.
+ * <p>
+ * The ring can be the single subscriber of a {@code MultiplexOutputStream},
+ * taking the place of many subscriber streams.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class MulticastRingBuffer
+        extends OutputStream
+{
+
+    /**
+     * Consumer's position in the ring
+     * <p>
+     * A cursor is read by one thread at a time. Its lag and loss may be read
+     * from any thread.
+     */
+    public final class Cursor
+            implements AutoCloseable
+    {
+
+        /**
+         * Sequence of the next byte to read
+         */
+        private volatile long sequence;
+
+        /**
+         * Bytes lost to being lapped
+         */
+        private volatile long lost;
+
+        /**
+         * Number of times lapped
+         */
+        private volatile long laps;
+
+        /**
+         * True when lapped, until the next record boundary is found
+         */
+        private boolean resync;
+
+
+        /**
+         * @param sequence
+         *            the sequence to start reading at
+         */
+        private Cursor(long sequence)
+        {
+            this.sequence = sequence;
+        }
+
+
+        /**
+         * Reads available bytes without blocking
+         *
+         * @param b
+         *            the buffer to read into
+         * @param off
+         *            offset in the buffer
+         * @param len
+         *            maximum number of bytes to read
+         * @return the number of bytes read, zero if none are available, or -1
+         *         if the ring is closed and all its bytes have been read
+         */
+        public int read(byte[] b, int off, int len)
+        {
+            while (true)
+            {
+                long seq = sequence;
+                long pub = published;
+                if (pub - seq > ring.length)
+                /*
+                 * Lapped before starting
+                 */
+                {
+                    lapped(seq);
+                    continue;
+                }
+
+                int n = (int) Math.min(len, pub - seq);
+                if (n <= 0)
+                    return closed && seq == published ? -1 : 0;
+
+                copy(seq, b, off, n);
+                VarHandle.loadLoadFence();
+                if (claimed - ring.length > seq)
+                /*
+                 * Overwritten while copying
+                 */
+                {
+                    lapped(seq);
+                    continue;
+                }
+
+                if (resync)
+                /*
+                 * Discard the partial record left by the lap
+                 */
+                {
+                    int lf = LineScanner.indexOf(b, off, off + n);
+                    int skip = lf < 0 ? n : lf - off + 1;
+                    lost += skip;
+                    sequence = seq + skip;
+                    if (lf < 0)
+                        continue;
+                    resync = false;
+                    n -= skip;
+                    System.arraycopy(b, off + skip, b, off, n);
+                    if (n == 0)
+                        continue;
+                    seq += skip;
+                }
+
+                sequence = seq + n;
+                return n;
+            }
+        }
+
+
+        /**
+         * Returns the sequence of the next byte this cursor will read
+         *
+         * @return the sequence
+         */
+        public long getSequence()
+        {
+            return sequence;
+        }
+
+
+        /**
+         * Returns the number of bytes written but not yet read through this
+         * cursor, which exceeds the ring capacity once the cursor is lapped
+         *
+         * @return the lag in bytes
+         */
+        public long getLag()
+        {
+            return published - sequence;
+        }
+
+
+        /**
+         * Returns the number of bytes this cursor lost to being lapped
+         *
+         * @return the lost bytes
+         */
+        public long getLostBytes()
+        {
+            return lost;
+        }
+
+
+        /**
+         * Returns the number of times this cursor has been lapped
+         *
+         * @return the laps
+         */
+        public long getLaps()
+        {
+            return laps;
+        }
+
+
+        /**
+         * Detaches this cursor from the ring
+         */
+        @Override
+        public void close()
+        {
+            Cursor[] current, next;
+            do
+            {
+                current = cursors.get();
+                List<Cursor> kept = new ArrayList<>(current.length);
+                for (Cursor cursor : current)
+                {
+                    if (cursor != this)
+                        kept.add(cursor);
+                }
+                next = kept.toArray(NO_CURSORS);
+            }
+            while (!cursors.compareAndSet(current, next));
+        }
+
+
+        /**
+         * Moves the cursor to the oldest bytes still in the ring
+         *
+         * @param seq
+         *            the sequence the cursor was at
+         */
+        private void lapped(long seq)
+        {
+            long oldest = claimed - ring.length;
+            lost += oldest - seq;
+            laps++;
+            sequence = oldest;
+            resync = true;
+        }
+    }
+
+    /**
+     * No cursors
+     */
+    private static final Cursor[] NO_CURSORS = new Cursor[0];
+
+    /**
+     * The ring
+     */
+    private final byte[] ring;
+
+    /**
+     * Ring index mask
+     */
+    private final int mask;
+
+    /**
+     * Lock serializing writers
+     */
+    private final ReentrantLock writer = new ReentrantLock();
+
+    /**
+     * Sequence up to which bytes are being, or have been, written. Ring bytes
+     * before {@code claimed - capacity} may have been overwritten.
+     */
+    private volatile long claimed;
+
+    /**
+     * Sequence up to which bytes have been written and can be read
+     */
+    private volatile long published;
+
+    /**
+     * Attached cursors, copy-on-write
+     */
+    private final AtomicReference<Cursor[]> cursors =
+            new AtomicReference<>(NO_CURSORS);
+
+    /**
+     * True once closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * Threads and futures waiting for bytes to be written
+     */
+    private final ConcurrentLinkedQueue<SequenceWaiter> waiters =
+            new ConcurrentLinkedQueue<>();
+
+
+    /**
+     * @param capacity
+     *            ring capacity in bytes, rounded up to a power of two
+     */
+    public MulticastRingBuffer(int capacity)
+    {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException(
+                    "Capacity must be between 1 and 2^30 bytes");
+        int size = Integer.highestOneBit(capacity);
+        ring = new byte[size < capacity ? size << 1 : size];
+        mask = ring.length - 1;
+    }
+
+
+    /**
+     * Returns the ring capacity
+     *
+     * @return the capacity in bytes
+     */
+    public int getCapacity()
+    {
+        return ring.length;
+    }
+
+
+    /**
+     * Returns the sequence after the last byte written, being the number of
+     * bytes ever written
+     *
+     * @return the sequence
+     */
+    public long getSequence()
+    {
+        return published;
+    }
+
+
+    /**
+     * Attaches a cursor that reads bytes written from now on
+     *
+     * @return the cursor
+     */
+    public Cursor subscribe()
+    {
+        return attach(new Cursor(published));
+    }
+
+
+    /**
+     * Attaches a cursor starting at an earlier sequence. If the bytes at the
+     * sequence have been overwritten, the cursor starts lapped.
+     *
+     * @param sequence
+     *            the sequence to start reading at
+     * @return the cursor
+     */
+    public Cursor subscribe(long sequence)
+    {
+        return attach(new Cursor(Math.max(0, Math.min(sequence, published))));
+    }
+
+
+    /**
+     * Returns the attached cursors
+     *
+     * @return the cursors
+     */
+    public Cursor[] getCursors()
+    {
+        return cursors.get().clone();
+    }
+
+
+    /**
+     * Returns the attached cursors lagging by more than a threshold
+     *
+     * @param lag
+     *            the threshold, in bytes
+     * @return the slow cursors
+     */
+    public Cursor[] getSlowCursors(long lag)
+    {
+        List<Cursor> slow = new ArrayList<>();
+        for (Cursor cursor : cursors.get())
+        {
+            if (cursor.getLag() > lag)
+                slow.add(cursor);
+        }
+        return slow.toArray(NO_CURSORS);
+    }
+
+
+    /**
+     * Attaches a record reader that tails bytes written from now on
+     *
+     * @return the reader
+     */
+    public TailReader tail()
+    {
+        return new TailReader(this, subscribe());
+    }
+
+
+    /**
+     * Attaches a record reader that tails bytes written from an earlier
+     * sequence
+     *
+     * @param sequence
+     *            the sequence to start reading at
+     * @return the reader
+     */
+    public TailReader tail(long sequence)
+    {
+        return new TailReader(this, subscribe(sequence));
+    }
+
+
+    /**
+     * Returns true once the ring is closed
+     *
+     * @return true if closed
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Write notification
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Waits for bytes to be written beyond a sequence, or for the ring to
+     * close
+     *
+     * @param seq
+     *            the sequence to wait beyond
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the time unit of the timeout
+     * @return the sequence, which is greater than {@code seq} unless the wait
+     *         timed out or the ring closed
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public long awaitSequence(long seq, long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        long current = published;
+        if (current > seq || closed)
+            return current;
+
+        SequenceWaiter waiter =
+                new SequenceWaiter(seq, Thread.currentThread(), null, null);
+        waiters.add(waiter);
+        try
+        {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while ((current = published) <= seq && !closed)
+            /*
+             * Recheck after registering, so a write in between is not missed
+             */
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return current;
+        }
+        finally
+        {
+            waiters.remove(waiter);
+        }
+    }
+
+
+    /**
+     * Returns a future completed with the sequence when bytes are written
+     * beyond a given sequence, or when the ring closes. A pending future is
+     * completed on the common {@code ForkJoinPool}.
+     *
+     * @param seq
+     *            the sequence to wait beyond
+     * @return future completed on a write beyond {@code seq}
+     * @see #onSequence(long, Executor)
+     */
+    public CompletableFuture<Long> onSequence(long seq)
+    {
+        return onSequence(seq, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Returns a future completed with the sequence when bytes are written
+     * beyond a given sequence, or when the ring closes.
+     * <p>
+     * A future still pending when the bytes are written is completed on the
+     * given executor rather than the writing thread, so its dependent stages
+     * never run inside a writer's call. A future that can be completed at
+     * once is returned completed.
+     *
+     * @param seq
+     *            the sequence to wait beyond
+     * @param executor
+     *            the executor to complete a pending future on
+     * @return future completed on a write beyond {@code seq}, or
+     *         exceptionally if the executor rejects the completion
+     */
+    public CompletableFuture<Long> onSequence(long seq, Executor executor)
+    {
+        long current = published;
+        if (current > seq || closed)
+            return CompletableFuture.completedFuture(current);
+
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        SequenceWaiter waiter =
+                new SequenceWaiter(seq, null, future, executor);
+        waiters.add(waiter);
+
+        current = published;
+        if ((current > seq || closed) && waiters.remove(waiter))
+        /*
+         * Written while registering
+         */
+        {
+            future.complete(current);
+        }
+        return future;
+    }
+
+
+    /**
+     * Releases waiters for sequences before a given sequence
+     *
+     * @param seq
+     *            the sequence just published
+     */
+    private void releaseWaiters(long seq)
+    {
+        for (SequenceWaiter waiter : waiters)
+        {
+            if (waiter.after < seq && waiters.remove(waiter))
+                waiter.release(published);
+        }
+    }
+
+
+    /**
+     * A thread or future waiting for bytes to be written
+     */
+    private static final class SequenceWaiter
+    {
+        /**
+         * The sequence to wait beyond
+         */
+        final long after;
+
+        /**
+         * The waiting thread, or null
+         */
+        final Thread thread;
+
+        /**
+         * The waiting future, or null
+         */
+        final CompletableFuture<Long> future;
+
+        /**
+         * The executor to complete the future on, or null
+         */
+        final Executor executor;
+
+
+        SequenceWaiter(long after, Thread thread,
+                CompletableFuture<Long> future, Executor executor)
+        {
+            this.after = after;
+            this.thread = thread;
+            this.future = future;
+            this.executor = executor;
+        }
+
+
+        /**
+         * Wakes the waiter
+         *
+         * @param seq
+         *            the sequence reached
+         */
+        void release(long seq)
+        {
+            if (thread != null)
+                LockSupport.unpark(thread);
+            else
+                try
+                {
+                    future.completeAsync(() -> seq, executor);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    future.completeExceptionally(e);
+                }
+        }
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Writes longer than the ring capacity keep only their last bytes in the
+     * ring.
+     *
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+
+        writer.lock();
+        try
+        {
+            long seq = published;
+            claimed = seq + len;
+            /*
+             * Cursors must see the claim before any byte they may be copying
+             * changes
+             */
+            VarHandle.storeStoreFence();
+
+            int skip = Math.max(0, len - ring.length);
+            long pos = seq + skip;
+            for (int i = off + skip, end = off + len; i < end;)
+            {
+                int index = (int) pos & mask;
+                int n = Math.min(end - i, ring.length - index);
+                System.arraycopy(b, i, ring, index, n);
+                i += n;
+                pos += n;
+            }
+            published = seq + len;
+        }
+        finally
+        {
+            writer.unlock();
+        }
+        if (!waiters.isEmpty())
+            releaseWaiters(published);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Cursors read the remaining bytes, then the end of the stream.
+     *
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        releaseWaiters(Long.MAX_VALUE);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Adds a cursor to the attached cursors
+     *
+     * @param cursor
+     *            the cursor
+     * @return the cursor
+     */
+    private Cursor attach(Cursor cursor)
+    {
+        Cursor[] current, next;
+        do
+        {
+            current = cursors.get();
+            next = new Cursor[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = cursor;
+        }
+        while (!cursors.compareAndSet(current, next));
+        return cursor;
+    }
+
+
+    /**
+     * Copies bytes out of the ring
+     *
+     * @param seq
+     *            sequence of the first byte
+     * @param b
+     *            the destination
+     * @param off
+     *            offset in the destination
+     * @param len
+     *            number of bytes
+     */
+    private void copy(long seq, byte[] b, int off, int len)
+    {
+        int index = (int) seq & mask;
+        int n = Math.min(len, ring.length - index);
+        System.arraycopy(ring, index, b, off, n);
+        System.arraycopy(ring, 0, b, off + n, len - n);
+    }
+}
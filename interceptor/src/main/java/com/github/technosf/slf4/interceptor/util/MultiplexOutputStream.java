@@ -15,22 +15,99 @@
  */
 package com.github.technosf.slf4.interceptor.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.GatheringByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import com.github.technosf.slf4.interceptor.jfr.QueueOverflowEvent;
+import com.github.technosf.slf4.interceptor.jfr.SinkFlushEvent;
+import com.github.technosf.slf4.interceptor.util.AsyncOutputStream.OverflowPolicy;
+import com.github.technosf.slf4.interceptor.util.Subscriber.ChannelSubscriber;
+import com.github.technosf.slf4.interceptor.util.Subscriber.StreamSubscriber;
 
 /**
  * OutputStream Multiplexer
  * <p>
  * Multiplexes data on an output stream to subscribing other output streams.
- * This implementation synchronizes on {@code flush} allowing threads expecting
- * data on subscribing output streams to wait.
+ * This implementation numbers each {@code flush} allowing threads expecting
+ * data on subscribing output streams to wait for a flush after the last one
+ * they saw, either blocking with {@link #awaitFlush(long, long, TimeUnit)} or
+ * asynchronously with {@link #onFlush(long)}.
+ * <p>
+ * Subscribers are held in a copy-on-write array that is replaced atomically
+ * when subscribers are added or removed, so publishing to subscribers is a
+ * plain walk over an immutable snapshot.
+ * <p>
+ * Slow subscribers can be added through
+ * {@link #addAsyncOutputStream(OutputStream, int, OverflowPolicy, ThreadFactory)}
+ * so that each gets its own bounded queue and drain thread, and cannot stall
+ * writers to this stream.
+ * <p>
+ * Writes accumulate in one of a pair of pooled buffers. A flush swaps the
+ * buffers and publishes the filled one to subscribers in place, so writers can
+ * continue into the other buffer and no copy of the flushed data is made.
+ * <p>
+ * As well as {@code OutputStream}s, {@code GatheringByteChannel}s such as
+ * {@code FileChannel} and {@code SocketChannel} can subscribe. Channels receive
+ * the prefix, flushed data and postfix in one gathering write rather than
+ * three separate writes.
+ * <p>
+ * Subscribers can be added with a {@link RecordFilter}, evaluated once per
+ * record on each flush, so that they receive only the records they want.
+ * Rejected records are never written to them.
+ * <p>
+ * By default a flush writes to subscribers one after another. With
+ * {@link #setParallelFanOut(Executor, long, TimeUnit)} each subscriber is
+ * written to on the executor, for example one creating a virtual thread per
+ * task, against the same read-only buffer, and the flush waits for them up to
+ * a deadline. Subscribers still writing at the deadline are reported as
+ * stragglers, and the buffer is only reused once they finish.
+ * <p>
+ * Rather than flushing on every line with {@code autoFlush}, writes can be
+ * batched with {@link #setLinger(int, long)}: a flush happens when the
+ * buffered data reaches a size, or a time after the first unflushed byte was
+ * written, whichever is first. Time triggered flushes are started by a timer
+ * shared by all instances but run on an executor, one at a time for each
+ * instance, so a stalled subscriber of one stream does not hold up the
+ * linger flushes of others.
+ * <p>
+ * With {@link #setRecordFraming(boolean)} the stream treats LF terminated lines
+ * as records: each flush publishes only the complete records written so far,
+ * and a partially written line is held back until its terminator arrives.
+ * <p>
+ * Locking uses {@code ReentrantLock}s rather than monitors, so that threads,
+ * virtual threads in particular, blocked in subscriber IO during a flush do
+ * not pin their carrier threads. Writers and flushers have separate locks,
+ * and writers only wait for a flush while the buffers are swapped.
+ * <p>
+ * The buffers are built from fixed size chunks drawn from a pool, and the
+ * chunks go back to the pool after each flush. The pool keeps only a limited
+ * number of free chunks, so a burst of output does not permanently inflate
+ * the stream's footprint, and {@link #setBufferLimits} can put a hard ceiling
+ * on buffered bytes, with a {@link BufferOverflowPolicy} deciding what happens
+ * to writes beyond it.
  * 
  * @author technosf
  * @see Inspired by Brogdan Matasaru,
@@ -42,22 +119,181 @@ public class MultiplexOutputStream
 {
 
     /**
-     * The core OutputStream from which data will be published to the
-     * subscribing streams
+     * Policy applied to writes that would take the buffered data over the
+     * buffer ceiling
+     */
+    public enum BufferOverflowPolicy {
+
+        /**
+         * Drop the write
+         */
+        DROP,
+
+        /**
+         * Flush to make room, dropping the write if there is still none
+         */
+        FLUSH,
+
+        /**
+         * Fail the write with an {@code IOException}
+         */
+        FAIL
+    }
+
+    /**
+     * Default buffer chunk size
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Default bytes of free chunks retained for reuse
+     */
+    private static final long DEFAULT_RETAIN_BYTES = 256 * 1024;
+
+    /**
+     * Lock for writes to the publishing buffer
+     */
+    private final ReentrantLock publisher = new ReentrantLock();
+
+    /**
+     * Lock serializing flushes and other subscriber IO
+     */
+    private final ReentrantLock flusher = new ReentrantLock();
+
+    /**
+     * The pool of buffer chunks. Guarded by {@code publisher}.
+     */
+    private ChunkPool pool = new ChunkPool(DEFAULT_CHUNK_SIZE, Long.MAX_VALUE,
+            DEFAULT_RETAIN_BYTES);
+
+    /**
+     * What to do with writes beyond the buffer ceiling
+     */
+    private volatile BufferOverflowPolicy overflowPolicy =
+            BufferOverflowPolicy.DROP;
+
+    /**
+     * Bytes written to this stream that were dropped at the buffer ceiling
+     */
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    /**
+     * The buffer accumulating writes, from which data will be published to the
+     * subscribing streams. Guarded by {@code publisher}.
+     */
+    private PublishBuffer active = new PublishBuffer(pool);
+
+    /**
+     * The pooled buffer swapped in for {@code active} on flush, or null if it
+     * is still being published to stragglers
+     */
+    private final AtomicReference<PublishBuffer> spare =
+            new AtomicReference<>(new PublishBuffer(pool));
+
+    /**
+     * Timer shared by all instances to start linger flushes
      */
-    private final ByteArrayOutputStream publisher = new ByteArrayOutputStream();
+    private static final ScheduledThreadPoolExecutor LINGER_TIMER;
 
     /**
-     * The set of subscribing streams
+     * Default executor running linger flushes, a thread per lingering
+     * instance at most
      */
-    private Set<OutputStream> subscribers =
-            Collections.synchronizedSet(new HashSet<OutputStream>());
+    private static final ExecutorService LINGER_FLUSHER;
+
+    static
+    {
+        LINGER_TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "MultiplexOutputStream-linger");
+            t.setDaemon(true);
+            return t;
+        });
+        LINGER_TIMER.setRemoveOnCancelPolicy(true);
+        LINGER_FLUSHER = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "MultiplexOutputStream-linger-flush");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Empty subscriber snapshot
+     */
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    /**
+     * The subscribers, as an immutable copy-on-write snapshot
+     */
+    private final AtomicReference<Subscriber[]> subscribers =
+            new AtomicReference<>(NO_SUBSCRIBERS);
+
+    /**
+     * Number of flushes completed
+     */
+    private final AtomicLong flushSequence = new AtomicLong();
+
+    /**
+     * Threads and futures waiting for a flush
+     */
+    private final ConcurrentLinkedQueue<FlushWaiter> flushWaiters =
+            new ConcurrentLinkedQueue<>();
 
     /**
      * Automatically flush output streams on writes ending with EOL char 10
      */
     private boolean autoFlush = false;
 
+    /**
+     * Publish only complete LF terminated records
+     */
+    private boolean recordFraming = false;
+
+    /**
+     * Buffered byte count that triggers a flush, 0 for none
+     */
+    private int lingerBytes = 0;
+
+    /**
+     * Microseconds after the first unflushed byte that trigger a flush, 0 for
+     * none
+     */
+    private long lingerMicros = 0;
+
+    /**
+     * The pending linger flush, if any. Guarded by {@code publisher}.
+     */
+    private ScheduledFuture<?> lingerFlush;
+
+    /**
+     * Executor running linger flushes
+     */
+    private Executor lingerExecutor = LINGER_FLUSHER;
+
+    /**
+     * Linger flushes started and not yet run, so that one runs at a time
+     */
+    private final AtomicInteger lingerWip = new AtomicInteger();
+
+    /**
+     * Executor for parallel fan out, or null to write subscribers serially
+     */
+    private Executor fanOutExecutor;
+
+    /**
+     * Nanoseconds a parallel fan out waits for subscribers
+     */
+    private long fanOutDeadline;
+
+    /**
+     * Subscribers that missed the last parallel fan out deadline
+     */
+    private volatile Object[] stragglers = new Object[0];
+
+    /**
+     * Count of subscriber writes that missed a parallel fan out deadline
+     */
+    private final AtomicLong stragglerCount = new AtomicLong();
+
     /**
      * Prefix to prepend to output
      */
@@ -68,11 +304,6 @@ public class MultiplexOutputStream
      */
     private byte[] postfix = new byte[] {};
 
-    /**
-     * Flags if there is output written to the publishing stream.
-     */
-    private boolean writeFlag = false;
-
 
     /**
      * Default constructor
@@ -116,6 +347,141 @@ public class MultiplexOutputStream
     }
 
 
+    /**
+     * Sets record framing, so that subscribers only receive whole LF
+     * terminated records. Incomplete records are carried over to the following
+     * flush, and {@code autoFlush} flushes when a write completes a record
+     * rather than only when it ends with LF.
+     * 
+     * @param recordFraming
+     *            true to publish only whole records
+     * @return this MultiplexOutputStream
+     */
+    public MultiplexOutputStream setRecordFraming(boolean recordFraming)
+    {
+        this.recordFraming = recordFraming;
+        return this;
+    }
+
+
+    /**
+     * Sets linger batching, causing output streams to be flushed when the
+     * buffered data reaches {@code bytes} in size, or {@code micros}
+     * microseconds after the first unflushed byte was written.
+     * <p>
+     * When either bound is set it takes precedence over {@code autoFlush}, and
+     * lines are batched. Time triggered flushes run on a shared pool, one at a
+     * time for this stream, so a slow subscriber delays only this stream's
+     * flushes.
+     * 
+     * @param bytes
+     *            buffered bytes that trigger a flush, 0 for no size bound
+     * @param micros
+     *            microseconds that trigger a flush, 0 for no time bound
+     * @return this MultiplexOutputStream
+     */
+    public MultiplexOutputStream setLinger(int bytes, long micros)
+    {
+        return setLinger(bytes, micros, LINGER_FLUSHER);
+    }
+
+
+    /**
+     * Sets linger batching as {@link #setLinger(int, long)}, running time
+     * triggered flushes on the given executor, one at a time for this stream.
+     * 
+     * @param bytes
+     *            buffered bytes that trigger a flush, 0 for no size bound
+     * @param micros
+     *            microseconds that trigger a flush, 0 for no time bound
+     * @param executor
+     *            the executor to run time triggered flushes on
+     * @return this MultiplexOutputStream
+     */
+    public MultiplexOutputStream setLinger(int bytes, long micros,
+            Executor executor)
+    {
+        if (bytes < 0 || micros < 0)
+            throw new IllegalArgumentException("Negative linger");
+        if (executor == null)
+            throw new NullPointerException("Executor is required");
+        this.lingerBytes = bytes;
+        this.lingerMicros = micros;
+        this.lingerExecutor = executor;
+        return this;
+    }
+
+
+    /**
+     * Sets parallel fan out, causing each flush to write to subscribers
+     * concurrently on an executor and wait for them up to a deadline.
+     * <p>
+     * Flush latency then becomes that of the slowest subscriber rather than
+     * the sum of them all. A subscriber that misses the deadline is reported
+     * by {@link #getStragglers()} and keeps writing in the background; later
+     * flushes to it are queued behind that write, so a persistently slow
+     * subscriber should be added asynchronously instead.
+     * 
+     * @param executor
+     *            the executor to write subscribers on, such as a virtual
+     *            thread per task executor, or null for serial writes
+     * @param deadline
+     *            how long a flush waits for subscribers
+     * @param unit
+     *            the deadline unit
+     * @return this MultiplexOutputStream
+     */
+    public MultiplexOutputStream setParallelFanOut(Executor executor,
+            long deadline, TimeUnit unit)
+    {
+        this.fanOutDeadline = unit.toNanos(deadline);
+        this.fanOutExecutor = executor;
+        return this;
+    }
+
+
+    /**
+     * Sets the buffer chunk size and limits, and the policy for writes beyond
+     * the ceiling.
+     * <p>
+     * Data buffered at the time is kept. Buffers still being published when
+     * this is called return their chunks to the previous pool.
+     * 
+     * @param chunkSize
+     *            size of each buffer chunk
+     * @param maxBytes
+     *            ceiling on buffered bytes, including those being published
+     * @param retainBytes
+     *            bytes of free chunks kept for reuse after flushes
+     * @param policy
+     *            what to do with writes beyond the ceiling
+     * @return this MultiplexOutputStream
+     */
+    public MultiplexOutputStream setBufferLimits(int chunkSize, long maxBytes,
+            long retainBytes, BufferOverflowPolicy policy)
+    {
+        ChunkPool limited = new ChunkPool(chunkSize, maxBytes, retainBytes);
+        publisher.lock();
+        try
+        {
+            PublishBuffer buffered = active;
+            int recordEnd = buffered.recordEnd();
+            pool = limited;
+            active = new PublishBuffer(pool);
+            buffered.markRecordEnd(0);
+            buffered.carryTail(active); // moves everything
+            active.markRecordEnd(recordEnd);
+            spare.set(new PublishBuffer(pool));
+            overflowPolicy = policy;
+        }
+        finally
+        {
+            publisher.unlock();
+        }
+        return this;
+    }
+
+
     /**
      * Sets a prefix to write to output before each flush
      * 
@@ -157,7 +523,7 @@ public class MultiplexOutputStream
      */
     public OutputStream[] getOutputStreams()
     {
-        return subscribers.toArray(new OutputStream[] {});
+        return targets(OutputStream.class, new OutputStream[] {});
     }
 
 
@@ -170,7 +536,7 @@ public class MultiplexOutputStream
      */
     public boolean hasOutputStream(OutputStream os)
     {
-        return subscribers.contains(os);
+        return indexOf(subscribers.get(), os) >= 0;
     }
 
 
@@ -183,13 +549,52 @@ public class MultiplexOutputStream
      */
     public boolean addOutputStreams(OutputStream... os)
     {
-        synchronized (publisher)
-        /*
-         * Lock on publisher, so that IO operations are consistent
-         */
-        {
-            return subscribers.addAll(Arrays.asList(os));
-        }
+        return add(os, o -> new StreamSubscriber(o, null));
+    }
+
+
+    /**
+     * Add a subscribing {@code OutputStream} that receives only the records
+     * accepted by a filter
+     * 
+     * @param os
+     *            the subscriber to add
+     * @param filter
+     *            the record filter
+     * @return true is the subscriber was added
+     */
+    public boolean addOutputStream(OutputStream os, RecordFilter filter)
+    {
+        return add(new OutputStream[] { os },
+                o -> new StreamSubscriber(o, filter));
+    }
+
+
+    /**
+     * Add a subscribing {@code OutputStream} that is written to asynchronously
+     * through its own bounded queue and drain thread.
+     * <p>
+     * The returned {@code AsyncOutputStream} is the actual subscriber, exposes
+     * the lag and drop counters, and is what should be passed to
+     * {@code removeOutputStreams}.
+     * 
+     * @param os
+     *            the subscriber to add
+     * @param capacity
+     *            the maximum number of flushes queued for the subscriber
+     * @param policy
+     *            what to do when the subscriber's queue is full
+     * @param threadFactory
+     *            factory for the drain thread, platform or virtual
+     * @return the asynchronous subscriber
+     */
+    public AsyncOutputStream addAsyncOutputStream(OutputStream os,
+            int capacity, OverflowPolicy policy, ThreadFactory threadFactory)
+    {
+        AsyncOutputStream async =
+                new AsyncOutputStream(os, capacity, policy, threadFactory);
+        addOutputStreams(async);
+        return async;
     }
 
 
@@ -202,130 +607,793 @@ public class MultiplexOutputStream
      */
     public boolean removeOutputStreams(OutputStream... os)
     {
-        synchronized (publisher)
-        /*
-         * Lock on publisher, so that IO operations are consistent
-         */
-        {
-            return subscribers.removeAll(Arrays.asList(os));
-        }
+        return remove((Object[]) os);
     }
 
 
-    /* ---------------------------------------------------------------- 
+    /**
+     * Returns the subscribing {@code GatheringByteChannel}s as an array
      * 
-     * OutputStream Methods
+     * @return array of subscribers
+     */
+    public GatheringByteChannel[] getChannels()
+    {
+        return targets(GatheringByteChannel.class,
+                new GatheringByteChannel[] {});
+    }
+
+
+    /**
+     * Is the given channel a subscriber?
      * 
-     * ----------------------------------------------------------------
+     * @param channel
+     *            the channel
+     * @return true if it's a subscriber
      */
+    public boolean hasChannel(GatheringByteChannel channel)
+    {
+        return indexOf(subscribers.get(), channel) >= 0;
+    }
+
 
     /**
-     * {@inheritDoc}
-     *
-     * @see java.io.OutputStream#close()
+     * Add subscribing {@code GatheringByteChannel}s, which should be in
+     * blocking mode.
+     * 
+     * @param channels
+     *            the subscribers to add
+     * @return true is subscribers were added
      */
-    @Override
-    public void close() throws IOException
+    public boolean addChannels(GatheringByteChannel... channels)
     {
-        int exceptions = 0;
+        return add(channels, c -> new ChannelSubscriber(c, null));
+    }
+
+
+    /**
+     * Add a subscribing {@code GatheringByteChannel}, which should be in
+     * blocking mode, that receives only the records accepted by a filter
+     * 
+     * @param channel
+     *            the subscriber to add
+     * @param filter
+     *            the record filter
+     * @return true is the subscriber was added
+     */
+    public boolean addChannel(GatheringByteChannel channel,
+            RecordFilter filter)
+    {
+        return add(new GatheringByteChannel[] { channel },
+                c -> new ChannelSubscriber(c, filter));
+    }
+
+
+    /**
+     * Removes {@code GatheringByteChannel}s from subscribers.
+     * 
+     * @param channels
+     *            the subscribers to remove
+     * @return true is subscribers were removed
+     */
+    public boolean removeChannels(GatheringByteChannel... channels)
+    {
+        return remove((Object[]) channels);
+    }
+
 
-        synchronized (publisher)
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Adds subscribers not already present
+     * 
+     * @param targets
+     *            the subscriber targets to add
+     * @param factory
+     *            creates a subscriber for a target
+     * @return true is subscribers were added
+     */
+    private <T> boolean add(T[] targets, Function<T, Subscriber> factory)
+    {
+        Subscriber[] current, updated;
+        do
         /*
-         * Lock on publisher, so that IO operations are consistent
+         * Copy-on-write, retrying if the snapshot was replaced concurrently
          */
         {
-            for (OutputStream os : subscribers)
+            current = subscribers.get();
+            updated = current;
+            for (T target : targets)
             {
-                try
+                if (target != null && indexOf(updated, target) < 0)
                 {
-                    os.close();
-                }
-                catch (IOException e)
-                {
-                    exceptions++;
+                    updated = Arrays.copyOf(updated, updated.length + 1);
+                    updated[updated.length - 1] = factory.apply(target);
                 }
             }
-            /*
-             * Drop the subscribers
-             */
-            subscribers.clear();
         }
+        while (updated != current
+                && !subscribers.compareAndSet(current, updated));
 
-        /*
-         * Throw one exception for all errors after all subscribers have been processed
-         */
-        if (exceptions > 0)
-            throw new IOException("Could not cleanly close " + exceptions
-                    + " OutputStreams.");
-
+        return updated != current;
     }
 
 
     /**
-     * {code flush} takes accumulated writes and pushes them onto subscribing
-     * {@code OutputStream}s.
-     * <p>
-     * <em>flush</em> is synchronous and calls {@code notifyAll} once all
-     * {@code OutputStream}s have been flushed.
-     *
-     * @see java.io.OutputStream#flush()
+     * Removes subscribers
+     * 
+     * @param targets
+     *            the subscriber targets to remove
+     * @return true is subscribers were removed
      */
-    @Override
-    public synchronized void flush() throws IOException
+    private boolean remove(Object... targets)
     {
-        synchronized (publisher)
+        Subscriber[] current, updated;
+        do
         /*
-         * Lock on publisher, so that IO operations are consistent
+         * Copy-on-write, retrying if the snapshot was replaced concurrently
          */
         {
-            List<OutputStream> deadStreams = new ArrayList<>(); // Container streams found dead
-
-            /*
-             * Copy the publisher contents to be flushed and clear the publisher
-             */
-            byte[] b = publisher.toByteArray();
-            publisher.reset();
-
-            for (OutputStream os : subscribers)
-            /*
-             * Write and flush the publisher content to the subscribers
-             */
+            current = subscribers.get();
+            updated = current;
+            for (Object target : targets)
             {
-                try
+                int i = indexOf(updated, target);
+                if (i >= 0)
                 {
-                    if (writeFlag && b.length > 0)
-                    /*
-                     * Write only if a write operation happened previously
-                     */
-                    {
-                        if (prefix.length > 0)
-                            os.write(prefix);
-                        os.write(b);
-                        if (postfix.length > 0)
-                            os.write(postfix);
-                    }
-                    os.flush();
+                    Subscriber[] shrunk = new Subscriber[updated.length - 1];
+                    System.arraycopy(updated, 0, shrunk, 0, i);
+                    System.arraycopy(updated, i + 1, shrunk, i,
+                            shrunk.length - i);
+                    updated = shrunk;
                 }
-                catch (IOException e)
-                /*
-                 * Assume os is closed, add to dead list
-                 */
+            }
+        }
+        while (updated != current
+                && !subscribers.compareAndSet(current, updated));
+
+        return updated != current;
+    }
+
+
+    /**
+     * Finds a subscriber in a snapshot
+     * 
+     * @param snapshot
+     *            the subscriber snapshot
+     * @param target
+     *            the subscriber target to find
+     * @return the index of the subscriber, or -1 if not present
+     */
+    private static int indexOf(Subscriber[] snapshot, Object target)
+    {
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            if (snapshot[i].target.equals(target))
+                return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the subscriber targets of a given type
+     * 
+     * @param type
+     *            the target type
+     * @param array
+     *            an empty array of the target type
+     * @return the targets
+     */
+    private <T> T[] targets(Class<T> type, T[] array)
+    {
+        List<T> targets = new ArrayList<>();
+        for (Subscriber subscriber : subscribers.get())
+        {
+            if (type.isInstance(subscriber.target))
+                targets.add(type.cast(subscriber.target));
+        }
+        return targets.toArray(array);
+    }
+
+
+    /**
+     * Returns the subscribers that missed the deadline of the last parallel
+     * fan out
+     * 
+     * @return the straggling {@code OutputStream}s and channels
+     */
+    public Object[] getStragglers()
+    {
+        return stragglers.clone();
+    }
+
+
+    /**
+     * Returns the number of subscriber writes that have missed a parallel fan
+     * out deadline
+     * 
+     * @return the straggler count
+     */
+    public long getStragglerCount()
+    {
+        return stragglerCount.get();
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Buffer statistics
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the bytes held in buffer chunks, buffered or being published
+     * 
+     * @return the bytes in use
+     */
+    public long getBufferedBytes()
+    {
+        return pool().bytesInUse();
+    }
+
+
+    /**
+     * Returns the most bytes ever held in buffer chunks at once, since the
+     * buffer limits were last set
+     * 
+     * @return the high water mark in bytes
+     */
+    public long getBufferHighWaterMark()
+    {
+        return pool().highWaterMark();
+    }
+
+
+    /**
+     * Returns the number of buffer chunks allocated, since the buffer limits
+     * were last set
+     * 
+     * @return the chunks allocated
+     */
+    public long getChunksAllocated()
+    {
+        return pool().allocated();
+    }
+
+
+    /**
+     * Returns the number of buffer chunks reused from the pool, since the
+     * buffer limits were last set
+     * 
+     * @return the chunks reused
+     */
+    public long getChunksReused()
+    {
+        return pool().reused();
+    }
+
+
+    /**
+     * Returns the number of bytes dropped at the buffer ceiling
+     * 
+     * @return the dropped bytes
+     */
+    public long getDroppedBytes()
+    {
+        return droppedBytes.get();
+    }
+
+
+    /**
+     * @return the current chunk pool
+     */
+    private ChunkPool pool()
+    {
+        publisher.lock();
+        try
+        {
+            return pool;
+        }
+        finally
+        {
+            publisher.unlock();
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Flush notification
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the flush sequence, the number of flushes completed
+     * 
+     * @return the flush sequence
+     */
+    public long getFlushSequence()
+    {
+        return flushSequence.get();
+    }
+
+
+    /**
+     * Waits for a flush after a given flush sequence.
+     * <p>
+     * Passing the value returned by the previous call, or by
+     * {@code getFlushSequence}, waits for the next flush without missing any
+     * that happen in between.
+     * 
+     * @param seq
+     *            the last flush sequence seen
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the time unit of the timeout
+     * @return the flush sequence, which is greater than {@code seq} unless the
+     *         wait timed out
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public long awaitFlush(long seq, long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        long current = flushSequence.get();
+        if (current > seq)
+            return current;
+
+        FlushWaiter waiter =
+                new FlushWaiter(seq, Thread.currentThread(), null, null);
+        flushWaiters.add(waiter);
+        try
+        {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while ((current = flushSequence.get()) <= seq)
+            /*
+             * Recheck after registering, so a flush in between is not missed
+             */
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return current;
+        }
+        finally
+        {
+            flushWaiters.remove(waiter);
+        }
+    }
+
+
+    /**
+     * Returns a future completed with the flush sequence on the first flush
+     * after a given flush sequence. A pending future is completed on the
+     * common {@code ForkJoinPool}.
+     * 
+     * @param seq
+     *            the last flush sequence seen
+     * @return future completed on a flush after {@code seq}
+     * @see #onFlush(long, Executor)
+     */
+    public CompletableFuture<Long> onFlush(long seq)
+    {
+        return onFlush(seq, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Returns a future completed with the flush sequence on the first flush
+     * after a given flush sequence.
+     * <p>
+     * A future still pending at the flush is completed on the given executor
+     * rather than the flushing thread, so its dependent stages never run
+     * inside a log call. A future that can be completed at once is returned
+     * completed.
+     * 
+     * @param seq
+     *            the last flush sequence seen
+     * @param executor
+     *            the executor to complete a pending future on
+     * @return future completed on a flush after {@code seq}, or
+     *         exceptionally if the executor rejects the completion
+     */
+    public CompletableFuture<Long> onFlush(long seq, Executor executor)
+    {
+        long current = flushSequence.get();
+        if (current > seq)
+            return CompletableFuture.completedFuture(current);
+
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        FlushWaiter waiter = new FlushWaiter(seq, null, future, executor);
+        flushWaiters.add(waiter);
+
+        current = flushSequence.get();
+        if (current > seq && flushWaiters.remove(waiter))
+        /*
+         * Flushed while registering
+         */
+        {
+            future.complete(current);
+        }
+        return future;
+    }
+
+
+    /**
+     * Releases waiters for flushes up to a flush sequence
+     * 
+     * @param seq
+     *            the flush sequence just completed
+     */
+    private void releaseFlushWaiters(long seq)
+    {
+        for (FlushWaiter waiter : flushWaiters)
+        {
+            if (waiter.after < seq && flushWaiters.remove(waiter))
+                waiter.release(seq);
+        }
+    }
+
+
+    /**
+     * A thread or future waiting for a flush
+     */
+    private static final class FlushWaiter
+    {
+        /**
+         * The flush sequence to wait beyond
+         */
+        final long after;
+
+        /**
+         * The waiting thread, or null
+         */
+        final Thread thread;
+
+        /**
+         * The waiting future, or null
+         */
+        final CompletableFuture<Long> future;
+
+        /**
+         * The executor to complete the future on, or null
+         */
+        final Executor executor;
+
+
+        FlushWaiter(long after, Thread thread, CompletableFuture<Long> future,
+                Executor executor)
+        {
+            this.after = after;
+            this.thread = thread;
+            this.future = future;
+            this.executor = executor;
+        }
+
+
+        /**
+         * Wakes the waiter
+         * 
+         * @param seq
+         *            the flush sequence reached
+         */
+        void release(long seq)
+        {
+            if (thread != null)
+                LockSupport.unpark(thread);
+            else
+                try
+                {
+                    future.completeAsync(() -> seq, executor);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    future.completeExceptionally(e);
+                }
+        }
+    }
+
+
+    /* ---------------------------------------------------------------- 
+     * 
+     * OutputStream Methods
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        int exceptions = 0;
+
+        flusher.lock();
+        /*
+         * Lock on flush, so that subscriber IO operations are consistent
+         */
+        try
+        {
+            publisher.lock();
+            try
+            {
+                if (lingerFlush != null)
+                    lingerFlush.cancel(false);
+                lingerFlush = null;
+            }
+            finally
+            {
+                publisher.unlock();
+            }
+
+            /*
+             * Drop the subscribers
+             */
+            for (Subscriber subscriber : subscribers.getAndSet(NO_SUBSCRIBERS))
+            {
+                try
                 {
-                    deadStreams.add(os);
+                    subscriber.close();
                 }
+                catch (IOException e)
+                {
+                    exceptions++;
+                }
+            }
+        }
+        finally
+        {
+            flusher.unlock();
+        }
+
+        /*
+         * Throw one exception for all errors after all subscribers have been processed
+         */
+        if (exceptions > 0)
+            throw new IOException("Could not cleanly close " + exceptions
+                    + " subscribers.");
+
+    }
+
+
+    /**
+     * {code flush} takes accumulated writes and pushes them onto subscribing
+     * {@code OutputStream}s.
+     * <p>
+     * <em>flush</em> is synchronous and advances the flush sequence, waking
+     * threads and futures waiting on it, once all {@code OutputStream}s have
+     * been flushed. Writers are only held up while
+     * the buffers are swapped, not while subscribers are written to, and no
+     * monitor is held during subscriber IO.
+     *
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        long seq;
+        flusher.lock();
+        try
+        {
+            PublishBuffer batch;
+
+            publisher.lock();
+            /*
+             * Lock on publisher only to swap in the spare buffer
+             */
+            try
+            {
+                PublishBuffer next = spare.getAndSet(null);
+                batch = active;
+                active = next != null ? next : new PublishBuffer(pool);
+                if (recordFraming)
+                    batch.carryTail(active);
+                if (lingerFlush != null)
+                /*
+                 * The pending linger flush is being done now
+                 */
+                {
+                    lingerFlush.cancel(false);
+                    lingerFlush = null;
+                }
+            }
+            finally
+            {
+                publisher.unlock();
             }
 
-            if (!deadStreams.isEmpty())
+            Subscriber[] snapshot = subscribers.get();
+            SinkFlushEvent event = SinkFlushEvent.start();
+            long bytes = event == null ? 0 : batch.size();
+            if (fanOutExecutor == null || snapshot.length < 2)
+                fanOut(snapshot, batch);
+            else
+                fanOutParallel(snapshot, batch);
+            if (event != null)
+                event.finish(bytes, snapshot.length);
+
+            seq = flushSequence.incrementAndGet();
+        }
+        finally
+        {
+            flusher.unlock();
+        }
+
+        if (!flushWaiters.isEmpty())
+            releaseFlushWaiters(seq); // Notify waiting threads that a flush has occured
+    }
+
+
+    /**
+     * Writes and flushes a batch to subscribers one after another
+     * <p>
+     * Subscribers still being written by an earlier parallel fan out have the
+     * batch queued behind that write instead, so each target is only written
+     * by one thread at a time and in order, and the batch is released only
+     * once those writes are done.
+     * 
+     * @param snapshot
+     *            the subscribers
+     * @param batch
+     *            the batch to publish
+     */
+    private void fanOut(Subscriber[] snapshot, PublishBuffer batch)
+    {
+        List<Object> deadStreams = null; // Container streams found dead, lazily created
+        List<CompletableFuture<Void>> queued = null; // Behind stragglers
+
+        for (Subscriber subscriber : snapshot)
+        /*
+         * Write and flush the batch content to the subscribers
+         */
+        {
+            if (subscriber.isPublishing())
             /*
-             * Remove dead streams
+             * Straggler from a parallel fan out, queue behind its write
              */
             {
-                subscribers.removeAll(deadStreams);
+                if (queued == null)
+                    queued = new ArrayList<>();
+                Executor executor = fanOutExecutor;
+                queued.add(publishAsync(subscriber, batch,
+                        executor != null ? executor : Runnable::run));
+                continue;
             }
 
-            writeFlag = false;
+            try
+            {
+                subscriber.publish(prefix, batch, postfix);
+            }
+            catch (IOException | RuntimeException e)
+            /*
+             * Assume subscriber is closed or its filter broken, add to dead list
+             */
+            {
+                if (deadStreams == null)
+                    deadStreams = new ArrayList<>();
+                deadStreams.add(subscriber.target);
+            }
+        }
+
+        if (queued == null)
+            release(batch);
+        else
+            CompletableFuture.allOf(queued.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((v, t) -> release(batch));
+
+        if (deadStreams != null)
+        /*
+         * Remove dead streams
+         */
+        {
+            remove(deadStreams.toArray());
+        }
+    }
+
+
+    /**
+     * Writes and flushes a batch to subscribers concurrently, waiting for them
+     * up to the fan out deadline
+     * 
+     * @param snapshot
+     *            the subscribers
+     * @param batch
+     *            the batch to publish
+     */
+    private void fanOutParallel(Subscriber[] snapshot, PublishBuffer batch)
+    {
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            writes[i] = publishAsync(snapshot[i], batch, fanOutExecutor);
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(writes);
+        all.whenComplete((v, t) -> release(batch));
+
+        try
+        {
+            all.get(fanOutDeadline, TimeUnit.NANOSECONDS);
+            stragglers = new Object[0];
+        }
+        catch (ExecutionException e)
+        /*
+         * Failed subscribers remove themselves
+         */
+        {
+            stragglers = new Object[0];
+        }
+        catch (TimeoutException | InterruptedException e)
+        /*
+         * Report the subscribers still writing
+         */
+        {
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+
+            List<Object> late = new ArrayList<>();
+            for (int i = 0; i < snapshot.length; i++)
+            {
+                if (!writes[i].isDone())
+                    late.add(snapshot[i].target);
+            }
+            stragglerCount.addAndGet(late.size());
+            stragglers = late.toArray();
+        }
+    }
+
+
+    /**
+     * Publishes a batch to a subscriber on an executor, behind any publish
+     * to it still in flight, removing the subscriber if it fails
+     * 
+     * @param subscriber
+     *            the subscriber
+     * @param batch
+     *            the batch to publish
+     * @param executor
+     *            the executor to publish on
+     * @return future completed when the batch has been published
+     */
+    private CompletableFuture<Void> publishAsync(Subscriber subscriber,
+            PublishBuffer batch, Executor executor)
+    {
+        CompletableFuture<Void> write = subscriber.publishAsync(prefix, batch,
+                postfix, executor);
+        write.whenComplete((v, t) -> {
+            if (t != null)
+                remove(subscriber.target); // Assume subscriber is closed
+        });
+        return write;
+    }
+
+
+    /**
+     * Returns a published buffer to the pool
+     * 
+     * @param batch
+     *            the published buffer
+     */
+    private void release(PublishBuffer batch)
+    {
+        batch.reset();
+        if (batch.pool == pool())
+        /*
+         * Buffers of a replaced pool are left to the collector
+         */
+        {
+            spare.set(batch);
         }
-        notifyAll(); // Notify waiting threads that a flush has occured
     }
 
 
@@ -338,21 +1406,15 @@ public class MultiplexOutputStream
     @Override
     public void write(byte[] b) throws IOException
     {
-        synchronized (publisher)
-        /*
-         * Lock on publisher, so that IO operations are consistent
-         */
-        {
-            publisher.write(b);
-            writeFlag = true;
-            if (b[b.length - 1] == 10 && autoFlush)
-                flush();
-        }
+        write(b, 0, b.length);
     }
 
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Writes beyond the buffer ceiling are handled by the
+     * {@code BufferOverflowPolicy} set with {@code setBufferLimits}.
      * 
      * @throws IOException
      * @see java.io.OutputStream#write(byte[], int, int)
@@ -360,16 +1422,26 @@ public class MultiplexOutputStream
     @Override
     public void write(byte[] b, int off, int len) throws IOException
     {
-        synchronized (publisher)
+        if (buffer(b, off, len))
+            return;
+
+        BufferOverflowPolicy policy = overflowPolicy;
+        if (policy == BufferOverflowPolicy.FLUSH)
         /*
-         * Lock on publisher, so that IO operations are consistent
+         * Publish what is buffered to free its chunks, then try again
          */
         {
-            publisher.write(b, off, len);
-            writeFlag = true;
-            if (b[len - 1] == 10 && autoFlush)
-                flush();
+            flush();
+            if (buffer(b, off, len))
+                return;
         }
+
+        droppedBytes.addAndGet(len);
+        QueueOverflowEvent.emit("MultiplexOutputStream", policy.name(), 1,
+                len);
+        if (policy == BufferOverflowPolicy.FAIL)
+            throw new IOException(
+                    "Buffer ceiling reached, dropped " + len + " bytes.");
     }
 
 
@@ -381,15 +1453,155 @@ public class MultiplexOutputStream
     @Override
     public void write(int b) throws IOException
     {
-        synchronized (publisher)
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Appends a write to the active buffer, flushing afterwards if the write
+     * calls for it
+     * 
+     * @param b
+     *            the bytes
+     * @param off
+     *            offset of the write
+     * @param len
+     *            length of the write
+     * @return false if the write did not fit under the buffer ceiling
+     * @throws IOException
+     *             from the flush
+     */
+    private boolean buffer(byte[] b, int off, int len) throws IOException
+    {
+        boolean flush;
+        publisher.lock();
         /*
          * Lock on publisher, so that IO operations are consistent
          */
+        try
+        {
+            int start = active.size();
+            if (!active.write(b, off, len))
+                return false;
+            flush = written(framed(b, off, len, start));
+        }
+        finally
         {
-            publisher.write(b);
-            writeFlag = true;
-            if (b == 10 && autoFlush)
+            publisher.unlock();
+        }
+        if (flush)
+            flush();
+        return true;
+    }
+
+
+    /**
+     * Decides if a write should cause a flush, arming the linger timer when
+     * batching by time. Called holding {@code publisher}.
+     * 
+     * @param eol
+     *            true if the write ended with an EOL
+     * @return true if the write should be flushed
+     */
+    private boolean written(boolean eol)
+    {
+        if (lingerBytes == 0 && lingerMicros == 0)
+            return eol && autoFlush;
+
+        if (lingerBytes > 0 && (recordFraming ? active.recordEnd()
+                : active.size()) >= lingerBytes)
+        /*
+         * With framing only complete records count, as a flush carries an
+         * unfinished one over and would otherwise be repeated on every write
+         */
+        {
+            return true;
+        }
+
+        if (lingerMicros > 0 && lingerFlush == null)
+        /*
+         * First unflushed byte, start the linger clock
+         */
+        {
+            lingerFlush = LINGER_TIMER.schedule(this::lingered, lingerMicros,
+                    TimeUnit.MICROSECONDS);
+        }
+        return false;
+    }
+
+
+    /**
+     * Linger timer task, starting a linger flush on the linger executor
+     * unless one is already running, which then flushes again
+     */
+    private void lingered()
+    {
+        if (lingerWip.getAndIncrement() == 0)
+        {
+            try
+            {
+                lingerExecutor.execute(this::lingerFlush);
+            }
+            catch (RejectedExecutionException e)
+            {
+                lingerWip.set(0);
+            }
+        }
+    }
+
+
+    /**
+     * Linger flush, repeated while the timer fired during the last one
+     */
+    private void lingerFlush()
+    {
+        int missed = 1;
+        do
+        {
+            try
+            {
                 flush();
+            }
+            catch (IOException e)
+            /*
+             * Failed subscribers have already been dropped by flush
+             */
+            {
+            }
+            missed = lingerWip.addAndGet(-missed);
         }
+        while (missed != 0);
+    }
+
+
+    /**
+     * Tracks record boundaries for a write. Called holding {@code publisher}.
+     * 
+     * @param b
+     *            the bytes written
+     * @param off
+     *            offset of the write
+     * @param len
+     *            length of the write
+     * @param start
+     *            where the write was placed in the active buffer
+     * @return true if the write ended with, or with framing completed, a record
+     */
+    private boolean framed(byte[] b, int off, int len, int start)
+    {
+        if (len == 0)
+            return false;
+
+        if (!recordFraming)
+            return b[off + len - 1] == LineScanner.LF;
+
+        int lf = LineScanner.lastIndexOf(b, off, off + len);
+        if (lf < 0)
+            return false;
+
+        active.markRecordEnd(start + lf - off + 1);
+        return true;
     }
 }
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable byte store for {@code MultiplexOutputStream}
+ * <p>
+ * Unlike {@code ByteArrayOutputStream} the accumulated bytes are published in
+ * place, without copying them out of the store, so the store must not be
+ * written to while its contents are being published.
+ * <p>
+ * The store is a sequence of fixed size chunks taken from a
+ * {@code ChunkPool}, and returned to it when the store is reset, so the store
+ * never holds more memory than its current content needs.
+ * <p>
+ * Not thread safe, access is controlled by the owning stream.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+final class PublishBuffer
+{
+
+    /**
+     * No chunks
+     */
+    private static final byte[][] NO_CHUNKS = new byte[0][];
+
+    /**
+     * Empty record
+     */
+    private static final byte[] NO_BYTES = new byte[0];
+
+    /**
+     * The pool chunks are taken from
+     */
+    final ChunkPool pool;
+
+    /**
+     * Chunk size, from the pool
+     */
+    private final int chunkSize;
+
+    /**
+     * The chunks in use, in order
+     */
+    private byte[][] chunks = NO_CHUNKS;
+
+    /**
+     * Number of chunks in use
+     */
+    private int chunkCount;
+
+    /**
+     * Number of valid bytes in the store
+     */
+    private int count;
+
+    /**
+     * End of the last complete record in the store
+     */
+    private int recordEnd;
+
+
+    /**
+     * @param pool
+     *            the pool chunks are taken from
+     */
+    PublishBuffer(ChunkPool pool)
+    {
+        this.pool = pool;
+        this.chunkSize = pool.chunkSize;
+    }
+
+
+    /**
+     * Appends bytes, if the pool ceiling allows
+     *
+     * @param b
+     *            the source
+     * @param off
+     *            offset in the source
+     * @param len
+     *            number of bytes
+     * @return false if nothing was written because the ceiling was reached
+     */
+    boolean write(byte[] b, int off, int len)
+    {
+        if (!ensureCapacity(count + len, false))
+            return false;
+        append(b, off, len);
+        return true;
+    }
+
+
+    /**
+     * Returns the number of bytes in the store
+     *
+     * @return the size
+     */
+    int size()
+    {
+        return count;
+    }
+
+
+    /**
+     * Empties the store, returning its chunks to the pool
+     */
+    void reset()
+    {
+        truncate(0);
+        recordEnd = 0;
+    }
+
+
+    /**
+     * Records that the store holds complete records up to an index
+     *
+     * @param end
+     *            the index after the last complete record
+     */
+    void markRecordEnd(int end)
+    {
+        recordEnd = end;
+    }
+
+
+    /**
+     * Returns the end of the last complete record
+     *
+     * @return the index after the last complete record
+     */
+    int recordEnd()
+    {
+        return recordEnd;
+    }
+
+
+    /**
+     * Moves any incomplete record at the end of this store to another store,
+     * leaving only complete records. The other store may exceed the pool
+     * ceiling to take the record.
+     *
+     * @param to
+     *            the store to receive the incomplete record
+     */
+    void carryTail(PublishBuffer to)
+    {
+        to.ensureCapacity(to.count + count - recordEnd, true);
+        for (int pos = recordEnd; pos < count;)
+        {
+            int len = Math.min(chunkSize - pos % chunkSize, count - pos);
+            to.append(chunks[pos / chunkSize], pos % chunkSize, len);
+            pos += len;
+        }
+        truncate(recordEnd);
+    }
+
+
+    /**
+     * Writes the store contents to an {@code OutputStream} without copying
+     *
+     * @param os
+     *            the stream
+     * @throws IOException
+     *             from the stream
+     */
+    void writeTo(OutputStream os) throws IOException
+    {
+        writeTo(os, 0, count);
+    }
+
+
+    /**
+     * Writes part of the store contents to an {@code OutputStream} without
+     * copying, one write per chunk spanned
+     *
+     * @param os
+     *            the stream
+     * @param from
+     *            first index, inclusive
+     * @param to
+     *            last index, exclusive
+     * @throws IOException
+     *             from the stream
+     */
+    void writeTo(OutputStream os, int from, int to) throws IOException
+    {
+        while (from < to)
+        {
+            int len = Math.min(chunkSize - from % chunkSize, to - from);
+            os.write(chunks[from / chunkSize], from % chunkSize, len);
+            from += len;
+        }
+    }
+
+
+    /**
+     * Returns read-only views of the store contents, one per chunk, for
+     * gathering writes
+     *
+     * @return the views
+     */
+    ByteBuffer[] view()
+    {
+        return view(0, count);
+    }
+
+
+    /**
+     * Returns read-only views of part of the store contents, one per chunk
+     * spanned, for gathering writes
+     *
+     * @param from
+     *            first index, inclusive
+     * @param to
+     *            last index, exclusive
+     * @return the views
+     */
+    ByteBuffer[] view(int from, int to)
+    {
+        if (from >= to)
+            return new ByteBuffer[0];
+
+        ByteBuffer[] views =
+                new ByteBuffer[(to - 1) / chunkSize - from / chunkSize + 1];
+        for (int i = 0; from < to; i++)
+        {
+            int len = Math.min(chunkSize - from % chunkSize, to - from);
+            views[i] = ByteBuffer
+                    .wrap(chunks[from / chunkSize], from % chunkSize, len)
+                    .asReadOnlyBuffer();
+            from += len;
+        }
+        return views;
+    }
+
+
+    /**
+     * Returns the end of the record starting at an index, being the index after
+     * its LF, or the end of the store if it has no LF
+     *
+     * @param from
+     *            the start of the record
+     * @return the index after the record
+     */
+    int recordEnd(int from)
+    {
+        while (from < count)
+        {
+            int base = from - from % chunkSize;
+            int lf = LineScanner.indexOf(chunks[from / chunkSize],
+                    from - base, Math.min(chunkSize, count - base));
+            if (lf >= 0)
+                return base + lf + 1;
+            from = base + chunkSize;
+        }
+        return count;
+    }
+
+
+    /**
+     * Applies a filter to a record in the store. A record spanning chunks is
+     * copied so the filter sees it contiguously.
+     *
+     * @param filter
+     *            the filter
+     * @param from
+     *            the start of the record
+     * @param to
+     *            the end of the record
+     * @return true if the filter accepts the record
+     */
+    boolean accept(RecordFilter filter, int from, int to)
+    {
+        if (to == from)
+            return filter.accept(NO_BYTES, 0, 0);
+
+        if (from / chunkSize == (to - 1) / chunkSize)
+            return filter.accept(chunks[from / chunkSize], from % chunkSize,
+                    to - from);
+
+        byte[] record = new byte[to - from];
+        for (int pos = from; pos < to;)
+        {
+            int len = Math.min(chunkSize - pos % chunkSize, to - pos);
+            System.arraycopy(chunks[pos / chunkSize], pos % chunkSize, record,
+                    pos - from, len);
+            pos += len;
+        }
+        return filter.accept(record, 0, record.length);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Copies bytes into chunks already taken
+     *
+     * @param b
+     *            the source
+     * @param off
+     *            offset in the source
+     * @param len
+     *            number of bytes
+     */
+    private void append(byte[] b, int off, int len)
+    {
+        while (len > 0)
+        {
+            int n = Math.min(chunkSize - count % chunkSize, len);
+            System.arraycopy(b, off, chunks[count / chunkSize],
+                    count % chunkSize, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+
+    /**
+     * Takes chunks from the pool to hold at least the given number of bytes
+     *
+     * @param minCapacity
+     *            the required capacity
+     * @param force
+     *            true to exceed the pool ceiling if need be
+     * @return false if the pool ceiling would be exceeded
+     */
+    private boolean ensureCapacity(int minCapacity, boolean force)
+    {
+        if (minCapacity < 0)
+            throw new OutOfMemoryError("PublishBuffer overflow");
+
+        int needed = (minCapacity + chunkSize - 1) / chunkSize - chunkCount;
+        if (needed <= 0)
+            return true;
+
+        byte[][] taken = pool.take(needed, force);
+        if (taken == null)
+            return false;
+
+        if (chunkCount + needed > chunks.length)
+            chunks = Arrays.copyOf(chunks,
+                    Math.max(chunkCount + needed, chunks.length << 1));
+        System.arraycopy(taken, 0, chunks, chunkCount, needed);
+        chunkCount += needed;
+        return true;
+    }
+
+
+    /**
+     * Shortens the store, returning chunks no longer needed to the pool
+     *
+     * @param size
+     *            the new size
+     */
+    private void truncate(int size)
+    {
+        count = size;
+        int keep = (size + chunkSize - 1) / chunkSize;
+        while (chunkCount > keep)
+        {
+            pool.give(chunks[--chunkCount]);
+            chunks[chunkCount] = null;
+        }
+    }
+}
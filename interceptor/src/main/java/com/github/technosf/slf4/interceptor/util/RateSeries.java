@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts in fixed width time buckets, held in a circular array
+ * <p>
+ * Each bucket has a count per channel. Buckets are numbered from the epoch,
+ * and a bucket's cells are reused for the bucket a full circle later. Each
+ * cell packs the low 32 bits of its bucket number above a 32 bit count, so
+ * an increment is a single compare-and-set that restarts the count if the
+ * cell still holds an older bucket, with no separate reset to race with.
+ * Reads check the bucket number too, so stale cells read as zero and neither
+ * increments nor reads lock.
+ * <p>
+ * Counts saturate at 2^32 - 1 per bucket and channel.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class RateSeries
+{
+
+    /**
+     * Mask of the bucket number in a cell
+     */
+    private static final long TAG = 0xFFFFFFFF00000000L;
+
+    /**
+     * Mask of the count in a cell
+     */
+    private static final long COUNT = 0x00000000FFFFFFFFL;
+
+    /**
+     * Buckets held
+     */
+    private final int buckets;
+
+    /**
+     * Channels counted in each bucket
+     */
+    private final int channels;
+
+    /**
+     * Cells indexed by bucket and channel
+     */
+    private final AtomicLongArray cells;
+
+
+    /**
+     * Creates an empty series
+     *
+     * @param buckets
+     *            the number of buckets held
+     * @param channels
+     *            the number of channels counted in each bucket
+     * @throws IllegalArgumentException
+     *             if either is not positive, or their product exceeds an
+     *             array's
+     */
+    public RateSeries(int buckets, int channels)
+    {
+        if (buckets <= 0 || channels <= 0
+                || (long) buckets * channels > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(
+                    "Bad buckets " + buckets + " or channels " + channels);
+        this.buckets = buckets;
+        this.channels = channels;
+        cells = new AtomicLongArray(buckets * channels);
+    }
+
+
+    /**
+     * @return the number of buckets held
+     */
+    public int getBuckets()
+    {
+        return buckets;
+    }
+
+
+    /**
+     * Counts one in a bucket
+     *
+     * @param bucket
+     *            the bucket number
+     * @param channel
+     *            the channel
+     */
+    public void increment(long bucket, int channel)
+    {
+        int i = index(bucket, channel);
+        long tag = bucket << 32;
+        for (;;)
+        {
+            long cell = cells.get(i);
+            long next;
+            if ((cell & TAG) != tag)
+                next = tag | 1;
+            else if ((cell & COUNT) != COUNT)
+                next = cell + 1;
+            else
+                return; // Saturated
+            if (cells.compareAndSet(i, cell, next))
+                return;
+        }
+    }
+
+
+    /**
+     * Returns the count in a bucket
+     *
+     * @param bucket
+     *            the bucket number
+     * @param channel
+     *            the channel
+     * @return the count, zero if the bucket is no longer held
+     */
+    public long get(long bucket, int channel)
+    {
+        long cell = cells.get(index(bucket, channel));
+        return (cell & TAG) == bucket << 32 ? cell & COUNT : 0;
+    }
+
+
+    /**
+     * Returns the count over a run of buckets
+     *
+     * @param last
+     *            the number of the last bucket in the run
+     * @param count
+     *            the number of buckets in the run, up to those held
+     * @param channel
+     *            the channel
+     * @return the count
+     */
+    public long sum(long last, int count, int channel)
+    {
+        long first = last - Math.min(count, buckets) + 1;
+        long n = 0;
+        for (long bucket = first; bucket <= last; bucket++)
+            n += get(bucket, channel);
+        return n;
+    }
+
+
+    /**
+     * @param bucket
+     *            a bucket number
+     * @param channel
+     *            a channel
+     * @return the cell index
+     */
+    private int index(long bucket, int channel)
+    {
+        return (int) Math.floorMod(bucket, (long) buckets) * channels
+                + channel;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Record level predicate for {@code MultiplexOutputStream} subscribers
+ * <p>
+ * A record is an LF terminated line, or the unterminated remainder of a
+ * flush. Filters are evaluated against the record bytes in place, once per
+ * record per subscriber, and should be cheap: inspect a leading level byte or
+ * a logger name prefix rather than decode the record. Filters must not keep or
+ * modify the bytes they are given.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+@FunctionalInterface
+public interface RecordFilter
+{
+
+    /**
+     * Should the record be written to the subscriber?
+     *
+     * @param b
+     *            buffer holding the record
+     * @param off
+     *            offset of the record in the buffer
+     * @param len
+     *            length of the record, including any LF
+     * @return true if the subscriber should receive the record
+     */
+    boolean accept(byte[] b, int off, int len);
+
+
+    /**
+     * Filter accepting records accepted by both this and another filter
+     *
+     * @param other
+     *            the other filter
+     * @return the combined filter
+     */
+    default RecordFilter and(RecordFilter other)
+    {
+        return (b, off, len) -> accept(b, off, len) && other.accept(b, off, len);
+    }
+
+
+    /**
+     * Filter accepting records accepted by either this or another filter
+     *
+     * @param other
+     *            the other filter
+     * @return the combined filter
+     */
+    default RecordFilter or(RecordFilter other)
+    {
+        return (b, off, len) -> accept(b, off, len) || other.accept(b, off, len);
+    }
+
+
+    /**
+     * Filter accepting records this filter rejects
+     *
+     * @return the negated filter
+     */
+    default RecordFilter negate()
+    {
+        return (b, off, len) -> !accept(b, off, len);
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Filter accepting records with a given byte at a given position, such as
+     * a level character
+     *
+     * @param index
+     *            position in the record
+     * @param value
+     *            the byte to match
+     * @return the filter
+     */
+    static RecordFilter byteAt(int index, byte value)
+    {
+        return (b, off, len) -> index < len && b[off + index] == value;
+    }
+
+
+    /**
+     * Filter accepting records starting with the given bytes, such as a
+     * logger name
+     *
+     * @param prefix
+     *            the bytes to match
+     * @return the filter
+     */
+    static RecordFilter startsWith(byte[] prefix)
+    {
+        byte[] p = prefix.clone();
+        return (b, off, len) -> {
+            if (p.length > len)
+                return false;
+            for (int i = 0; i < p.length; i++)
+            {
+                if (b[off + i] != p[i])
+                    return false;
+            }
+            return true;
+        };
+    }
+
+
+    /**
+     * Filter accepting records starting with the given text, encoded as
+     * UTF-8
+     *
+     * @param prefix
+     *            the text to match
+     * @return the filter
+     */
+    static RecordFilter startsWith(String prefix)
+    {
+        return startsWith(prefix.getBytes(StandardCharsets.UTF_8));
+    }
+}
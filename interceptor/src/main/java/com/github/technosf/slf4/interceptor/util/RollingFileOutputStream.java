@@ -0,0 +1,712 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rolling, compressing file OutputStream
+ * <p>
+ * Writes to an active segment, {@code <name>.log} in a directory, through a
+ * large direct buffer onto a {@code FileChannel}, so the file sees few large
+ * writes. The segment is rolled when it reaches a size or age: it is renamed
+ * {@code <name>-<yyyyMMdd-HHmmss>-<nnn>.log}, so rolled segments sort in
+ * order, and handed to a background thread that compresses it to
+ * {@code .log.gz} with a {@code Deflater} and deletes the original, so logging
+ * threads never wait on compression.
+ * <p>
+ * Segments are only rolled between writes, so a subscriber publishing whole
+ * records per write, such as a {@code MultiplexOutputStream} subscriber, never
+ * has a record split across segments. An existing active segment is appended
+ * to.
+ * <p>
+ * A roll that fails, to rename the segment say, reopens the active segment
+ * before throwing, so writing carries on. Rolled segments left uncompressed
+ * by an earlier stream, one that stopped before compressing them or failed
+ * to, are queued for compression when a stream is created on the same
+ * directory and name, and partial compressions they left are deleted.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class RollingFileOutputStream
+        extends OutputStream
+{
+
+    /**
+     * Default write buffer size
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Compression buffer size
+     */
+    private static final int COMPRESS_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default compressor thread sequence
+     */
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    /**
+     * The segment directory
+     */
+    private final Path directory;
+
+    /**
+     * The segment name
+     */
+    private final String name;
+
+    /**
+     * The active segment
+     */
+    private final Path active;
+
+    /**
+     * Size at which the active segment is rolled
+     */
+    private final long maxBytes;
+
+    /**
+     * Age at which the active segment is rolled, in milliseconds
+     */
+    private final long maxMillis;
+
+    /**
+     * Deflater compression level
+     */
+    private final int level;
+
+    /**
+     * Compresses rolled segments
+     */
+    private final ExecutorService compressor;
+
+    /**
+     * Lock on the channel and buffer
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Write buffer
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The active segment channel
+     */
+    private FileChannel channel;
+
+    /**
+     * Bytes in the active segment, including those buffered
+     */
+    private long segmentBytes;
+
+    /**
+     * When the active segment was started
+     */
+    private long segmentStart;
+
+    /**
+     * Segment sequence within this stream
+     */
+    private int sequence;
+
+    /**
+     * Segments rolled, compressed, and failed to compress
+     */
+    private final AtomicLong rolled = new AtomicLong(),
+            compressed = new AtomicLong(), compressFailures = new AtomicLong();
+
+    /**
+     * Segments waiting for or in compression
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Compression bytes in and out, and time spent compressing
+     */
+    private final AtomicLong compressedIn = new AtomicLong(),
+            compressedOut = new AtomicLong(), compressNanos = new AtomicLong();
+
+    /**
+     * Set once this stream is closed
+     */
+    private volatile boolean closed = false;
+
+
+    /**
+     * Creates a stream with default buffer and compression level, compressing
+     * on a daemon platform thread
+     *
+     * @param directory
+     *            the segment directory, created if need be
+     * @param name
+     *            the segment name
+     * @param maxBytes
+     *            the size at which to roll a segment
+     * @param maxAge
+     *            the age at which to roll a segment
+     * @param unit
+     *            the unit of {@code maxAge}
+     * @throws IOException
+     *             if the active segment cannot be opened
+     */
+    public RollingFileOutputStream(Path directory, String name, long maxBytes,
+            long maxAge, TimeUnit unit) throws IOException
+    {
+        this(directory, name, maxBytes, maxAge, unit, DEFAULT_BUFFER_SIZE,
+                Deflater.DEFAULT_COMPRESSION, r -> {
+                    Thread t = new Thread(r, "RollingFileOutputStream-"
+                            + THREAD_SEQUENCE.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+    }
+
+
+    /**
+     * Creates a stream
+     *
+     * @param directory
+     *            the segment directory, created if need be
+     * @param name
+     *            the segment name
+     * @param maxBytes
+     *            the size at which to roll a segment
+     * @param maxAge
+     *            the age at which to roll a segment
+     * @param unit
+     *            the unit of {@code maxAge}
+     * @param bufferSize
+     *            the write buffer size
+     * @param level
+     *            the {@code Deflater} compression level
+     * @param threadFactory
+     *            creates the compressor thread
+     * @throws IOException
+     *             if the active segment cannot be opened
+     */
+    public RollingFileOutputStream(Path directory, String name, long maxBytes,
+            long maxAge, TimeUnit unit, int bufferSize, int level,
+            ThreadFactory threadFactory) throws IOException
+    {
+        if (maxBytes <= 0 || maxAge <= 0 || bufferSize <= 0)
+            throw new IllegalArgumentException(
+                    "Size, age and buffer must be positive");
+
+        this.directory = Files.createDirectories(directory);
+        this.name = name;
+        this.active = directory.resolve(name + ".log");
+        this.maxBytes = maxBytes;
+        this.maxMillis = unit.toMillis(maxAge);
+        this.level = level;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.compressor = Executors.newSingleThreadExecutor(threadFactory);
+        open();
+        recover();
+    }
+
+
+    /* ----------------------------------------------------------------
+     *
+     * Statistics
+     *
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the active segment
+     *
+     * @return the active segment path
+     */
+    public Path getActiveSegment()
+    {
+        return active;
+    }
+
+
+    /**
+     * Returns the bytes written to the active segment, including those still
+     * buffered
+     *
+     * @return the active segment size
+     */
+    public long getSegmentBytes()
+    {
+        lock.lock();
+        try
+        {
+            return segmentBytes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of segments rolled
+     *
+     * @return the rolled segment count
+     */
+    public long getRolledSegments()
+    {
+        return rolled.get();
+    }
+
+
+    /**
+     * Returns the number of segments compressed
+     *
+     * @return the compressed segment count
+     */
+    public long getCompressedSegments()
+    {
+        return compressed.get();
+    }
+
+
+    /**
+     * Returns the number of segments that failed to compress, and were left
+     * uncompressed
+     *
+     * @return the failed segment count
+     */
+    public long getCompressionFailures()
+    {
+        return compressFailures.get();
+    }
+
+
+    /**
+     * Returns the number of rolled segments waiting for or in compression
+     *
+     * @return the pending segment count
+     */
+    public int getPendingCompressions()
+    {
+        return pending.get();
+    }
+
+
+    /**
+     * Returns the uncompressed bytes of the compressed segments
+     *
+     * @return the bytes compressed
+     */
+    public long getCompressionInputBytes()
+    {
+        return compressedIn.get();
+    }
+
+
+    /**
+     * Returns the compressed bytes of the compressed segments
+     *
+     * @return the bytes output by compression
+     */
+    public long getCompressionOutputBytes()
+    {
+        return compressedOut.get();
+    }
+
+
+    /**
+     * Returns the uncompressed bytes compressed per second of compressor time
+     *
+     * @return the compression throughput in bytes per second, 0 if nothing
+     *         has been compressed
+     */
+    public double getCompressionThroughput()
+    {
+        long nanos = compressNanos.get();
+        return nanos == 0 ? 0
+                : compressedIn.get() * (double) TimeUnit.SECONDS.toNanos(1)
+                        / nanos;
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The active segment is rolled first if it has reached its size or age.
+     *
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        lock.lock();
+        try
+        {
+            ensureOpen();
+            if (segmentBytes > 0 && (segmentBytes >= maxBytes
+                    || System.currentTimeMillis() - segmentStart >= maxMillis))
+                roll();
+
+            segmentBytes += len;
+            if (len >= buffer.capacity())
+            /*
+             * Large writes go straight to the channel
+             */
+            {
+                drain();
+                write(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+            if (len > buffer.remaining())
+                drain();
+            buffer.put(b, off, len);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Writes the buffer to the active segment. The segment is not forced to
+     * the storage device.
+     *
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        lock.lock();
+        try
+        {
+            ensureOpen();
+            drain();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Rolls the active segment now, if it is not empty
+     *
+     * @throws IOException
+     *             if the segment cannot be rolled
+     */
+    public void roll() throws IOException
+    {
+        lock.lock();
+        try
+        {
+            ensureOpen();
+            if (segmentBytes == 0)
+                return;
+
+            drain();
+            channel.close();
+            try
+            {
+                Path segment = segmentPath();
+                Files.move(active, segment);
+                rolled.incrementAndGet();
+                pending.incrementAndGet();
+                compressor.execute(() -> compress(segment));
+            }
+            finally
+            /*
+             * Reopen the active segment, a new one unless the move failed, so
+             * a failed roll does not leave the stream on a closed channel
+             */
+            {
+                open();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Writes the buffer and closes the active segment, which is left
+     * uncompressed, then waits for pending compressions to complete
+     *
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        lock.lock();
+        try
+        {
+            if (closed)
+                return;
+            closed = true;
+            try
+            {
+                drain();
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        compressor.shutdown();
+        try
+        {
+            compressor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Throws if this stream is closed, and reopens the active segment if its
+     * channel was closed under it
+     *
+     * @throws IOException
+     *             if closed, or the active segment cannot be reopened
+     */
+    private void ensureOpen() throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+        if (!channel.isOpen())
+        /*
+         * Closed by a failed roll or an interrupted write
+         */
+        {
+            open();
+        }
+    }
+
+
+    /**
+     * Opens the active segment for appending
+     *
+     * @throws IOException
+     *             if the segment cannot be opened
+     */
+    private void open() throws IOException
+    {
+        channel = FileChannel.open(active, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+        segmentStart = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Queues rolled segments left uncompressed by an earlier stream for
+     * compression, and deletes partial compressions
+     *
+     * @throws IOException
+     *             if the directory cannot be listed
+     */
+    private void recover() throws IOException
+    {
+        Pattern rolledSegment = Pattern.compile(
+                Pattern.quote(name) + "-\\d{8}-\\d{6}-\\d{3,}\\.log");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for (Path file : files)
+            {
+                String fileName = file.getFileName().toString();
+                boolean part = fileName.endsWith(".gz.part");
+                if (!rolledSegment.matcher(part
+                        ? fileName.substring(0, fileName.length() - 8)
+                        : fileName).matches())
+                    continue;
+
+                if (part)
+                    Files.deleteIfExists(file);
+                else
+                {
+                    pending.incrementAndGet();
+                    compressor.execute(() -> compress(file));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Writes the buffer to the channel, with the lock held
+     *
+     * @throws IOException
+     *             writing to the channel
+     */
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        try
+        {
+            write(buffer);
+        }
+        finally
+        {
+            buffer.clear();
+        }
+    }
+
+
+    /**
+     * Writes bytes to the channel, with the lock held
+     *
+     * @param bytes
+     *            the bytes
+     * @throws IOException
+     *             writing to the channel
+     */
+    private void write(ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+
+
+    /**
+     * Names a rolled segment after the time it was started and a sequence,
+     * unique in the directory
+     *
+     * @return the rolled segment path
+     */
+    private Path segmentPath()
+    {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss")
+                .format(new Date(segmentStart));
+        Path segment;
+        do
+        {
+            segment = directory.resolve(String.format("%s-%s-%03d.log", name,
+                    stamp, ++sequence));
+        }
+        while (Files.exists(segment) || Files.exists(
+                segment.resolveSibling(segment.getFileName() + ".gz")));
+        return segment;
+    }
+
+
+    /**
+     * Compresses a rolled segment to {@code .gz} and deletes it, on the
+     * compressor thread. A segment that fails to compress is left as it is.
+     *
+     * @param segment
+     *            the rolled segment
+     */
+    private void compress(Path segment)
+    {
+        Path gz = segment.resolveSibling(segment.getFileName() + ".gz");
+        Path part = segment.resolveSibling(segment.getFileName() + ".gz.part");
+        long start = System.nanoTime();
+        try (FileChannel in = FileChannel.open(segment,
+                StandardOpenOption.READ))
+        {
+            long size = in.size();
+            try (OutputStream out = Files.newOutputStream(part);
+                    GZIPOutputStream zip = new GZIPOutputStream(out,
+                            COMPRESS_BUFFER_SIZE)
+                    {
+                        {
+                            def.setLevel(level);
+                        }
+                    })
+            {
+                ByteBuffer chunk = ByteBuffer.allocate(COMPRESS_BUFFER_SIZE);
+                while (in.read(chunk) >= 0)
+                {
+                    zip.write(chunk.array(), 0, chunk.position());
+                    chunk.clear();
+                }
+            }
+            Files.move(part, gz, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(segment);
+
+            compressNanos.addAndGet(System.nanoTime() - start);
+            compressedIn.addAndGet(size);
+            compressedOut.addAndGet(Files.size(gz));
+            compressed.incrementAndGet();
+        }
+        catch (IOException e)
+        /*
+         * Leave the segment uncompressed
+         */
+        {
+            compressFailures.incrementAndGet();
+            try
+            {
+                Files.deleteIfExists(part);
+            }
+            catch (IOException ignored)
+            {
+            }
+        }
+        finally
+        {
+            pending.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streaming top-K tracker over a fixed number of counters
+ * <p>
+ * A Space-Saving sketch: each key offered is counted in its counter if it
+ * has one, else takes an empty counter, else replaces the counter with the
+ * lowest count, inheriting that count as its error. A counter's count
+ * overestimates its key's by no more than its error, and in a sequential
+ * sketch any key offered more than {@code total / capacity} times holds a
+ * counter.
+ * <p>
+ * Rather than keep the counters ordered by count, which needs a lock, keys
+ * hash to a window of {@code PROBES} counters in a table, claimed and
+ * replaced by compare-and-set. A key missing from its window replaces the
+ * lowest count in the window rather than the lowest overall, so errors can
+ * be larger than a sequential sketch's, but offering never locks and memory
+ * is fixed. Increments racing a replacement may be lost, and a key racing
+ * itself may rarely take two counters, which {@code getTop} merges.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ * @param <K>
+ *            the key type
+ */
+public final class SpaceSaving<K>
+{
+
+    /**
+     * Counters a key may take, from the one it hashes to
+     */
+    private static final int PROBES = 8;
+
+    /**
+     * The number of counters asked for
+     */
+    private final int capacity;
+
+    /**
+     * The counters, at least {@code capacity} of them
+     */
+    private final AtomicReferenceArray<Counter<K>> counters;
+
+    /**
+     * Index mask of {@code counters}
+     */
+    private final int mask;
+
+    /**
+     * Keys offered
+     */
+    private final LongAdder total = new LongAdder();
+
+
+    /**
+     * Creates a sketch
+     *
+     * @param capacity
+     *            the number of counters, rounded up to a power of two no
+     *            less than {@code PROBES}
+     * @throws IllegalArgumentException
+     *             if {@code capacity} is not between 1 and 2^30
+     */
+    public SpaceSaving(int capacity)
+    {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException(
+                    "Capacity must be between 1 and 2^30: " + capacity);
+        this.capacity = capacity;
+        int size = Math.max(PROBES, Integer.highestOneBit(capacity * 2 - 1));
+        counters = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+
+    /**
+     * @return the number of counters asked for, which may be fewer than are
+     *         held
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+
+    /**
+     * @return the number of keys offered
+     */
+    public long getTotal()
+    {
+        return total.sum();
+    }
+
+
+    /**
+     * Counts a key
+     *
+     * @param key
+     *            the key
+     */
+    public void offer(K key)
+    {
+        total.increment();
+        int h = key.hashCode();
+        int first = (h ^ (h >>> 16)) & mask;
+        for (;;)
+        {
+            int victim = -1;
+            Counter<K> lowest = null;
+            long min = Long.MAX_VALUE;
+            int i = first;
+            for (int probe = 0; probe < PROBES; probe++)
+            {
+                Counter<K> counter = counters.get(i);
+                if (counter == null)
+                {
+                    if (counters.compareAndSet(i, null, new Counter<>(key, 0)))
+                        return;
+                    counter = counters.get(i);
+                }
+                if (counter.key.equals(key))
+                {
+                    counter.count.increment();
+                    return;
+                }
+                long count = counter.count.sum();
+                if (count < min)
+                {
+                    min = count;
+                    victim = i;
+                    lowest = counter;
+                }
+                i = (i + 1) & mask;
+            }
+            if (counters.compareAndSet(victim, lowest,
+                    new Counter<>(key, min)))
+                return;
+            /*
+             * Lost the window to another thread, look again
+             */
+        }
+    }
+
+
+    /**
+     * Returns the keys with the highest counts
+     *
+     * @param n
+     *            the number of keys to return
+     * @return up to {@code n} keys, highest count first, none if {@code n}
+     *         is not positive
+     */
+    public List<Entry<K>> getTop(int n)
+    {
+        Map<K, Entry<K>> merged = new HashMap<>();
+        for (int i = 0; i < counters.length(); i++)
+        {
+            Counter<K> counter = counters.get(i);
+            if (counter != null)
+                merged.merge(counter.key, counter.entry(),
+                        (a, b) -> new Entry<>(a.key, a.count + b.count,
+                                a.error + b.error));
+        }
+        List<Entry<K>> entries = new ArrayList<>(merged.values());
+        entries.sort(Comparator.comparingLong(Entry<K>::getCount).reversed());
+        return entries.subList(0, Math.max(0, Math.min(n, entries.size())));
+    }
+
+
+    /**
+     * Clears the sketch. Keys offered while clearing may be lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < counters.length(); i++)
+            counters.set(i, null);
+        total.reset();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * A key's counter
+     *
+     * @param <K>
+     *            the key type
+     */
+    private static final class Counter<K>
+    {
+
+        /**
+         * The key
+         */
+        final K key;
+
+        /**
+         * The count inherited from the counter replaced
+         */
+        final long error;
+
+        /**
+         * The count, including the error
+         */
+        final LongAdder count = new LongAdder();
+
+
+        /**
+         * Creates a counter counting one
+         *
+         * @param key
+         *            the key
+         * @param error
+         *            the count inherited from the counter replaced
+         */
+        Counter(K key, long error)
+        {
+            this.key = key;
+            this.error = error;
+            count.add(error + 1);
+        }
+
+
+        /**
+         * @return a snapshot of the counter
+         */
+        Entry<K> entry()
+        {
+            return new Entry<>(key, count.sum(), error);
+        }
+    }
+
+
+    /**
+     * Immutable snapshot of a key's counter
+     *
+     * @param <K>
+     *            the key type
+     */
+    public static final class Entry<K>
+    {
+
+        /**
+         * The key
+         */
+        private final K key;
+
+        /**
+         * The count and its maximum overestimate
+         */
+        private final long count, error;
+
+
+        /**
+         * @param key
+         *            the key
+         * @param count
+         *            the count
+         * @param error
+         *            the maximum overestimate of the count
+         */
+        Entry(K key, long count, long error)
+        {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+
+        /**
+         * @return the key
+         */
+        public K getKey()
+        {
+            return key;
+        }
+
+
+        /**
+         * @return the estimated count, no less than the true count unless
+         *         increments were lost to races
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+
+        /**
+         * @return the maximum overestimate of the count
+         */
+        public long getError()
+        {
+            return error;
+        }
+
+
+        /**
+         * @return the count the key is certain to have reached
+         */
+        public long getGuaranteed()
+        {
+            return count - error;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return key + " count=" + count + " error=" + error;
+        }
+    }
+}
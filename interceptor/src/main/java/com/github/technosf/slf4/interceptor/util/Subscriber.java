@@ -0,0 +1,361 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@code MultiplexOutputStream} subscriber
+ * <p>
+ * Adapts the different kinds of subscriber target to the framed writes made
+ * on each flush. A subscriber with a {@code RecordFilter} is only written the
+ * records its filter accepts, as runs of consecutive accepted records taken in
+ * place from the flushed buffer.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+abstract class Subscriber
+{
+
+    /**
+     * The subscribing stream or channel
+     */
+    final Object target;
+
+    /**
+     * The record filter, or null to receive everything
+     */
+    final RecordFilter filter;
+
+    /**
+     * Completion of the last asynchronous publish, so that publishes to this
+     * subscriber stay in order. Accessed only by the flushing thread.
+     */
+    private CompletableFuture<Void> published =
+            CompletableFuture.completedFuture(null);
+
+
+    /**
+     * @param target
+     *            the subscribing stream or channel
+     * @param filter
+     *            the record filter, or null to receive everything
+     */
+    Subscriber(Object target, RecordFilter filter)
+    {
+        this.target = target;
+        this.filter = filter;
+    }
+
+
+    /**
+     * Publishes a flushed batch to the target, writing it if not empty, then
+     * flushing the target
+     *
+     * @param prefix
+     *            bytes to precede the batch, may be empty
+     * @param batch
+     *            the batch
+     * @param postfix
+     *            bytes to follow the batch, may be empty
+     * @throws IOException
+     *             if the target could not be written to or flushed
+     */
+    final void publish(byte[] prefix, PublishBuffer batch, byte[] postfix)
+            throws IOException
+    {
+        if (batch.size() > 0)
+        /*
+         * Write only if a write operation happened previously
+         */
+        {
+            write(prefix, batch, postfix);
+        }
+        flush();
+    }
+
+
+    /**
+     * Is an asynchronous publish to this subscriber still in flight? If so,
+     * further publishes must be made with {@code publishAsync} to stay in
+     * order and off the target while it is being written.
+     *
+     * @return true if an asynchronous publish has not completed
+     */
+    final boolean isPublishing()
+    {
+        return !published.isDone();
+    }
+
+
+    /**
+     * Publishes a flushed batch on an executor, once any previous
+     * asynchronous publish to this subscriber has completed
+     *
+     * @param prefix
+     *            bytes to precede the batch, may be empty
+     * @param batch
+     *            the batch, which must not be reused until the returned future
+     *            completes
+     * @param postfix
+     *            bytes to follow the batch, may be empty
+     * @param executor
+     *            the executor to publish on
+     * @return future completed when the batch has been published, or
+     *         exceptionally if the subscriber failed
+     */
+    final CompletableFuture<Void> publishAsync(byte[] prefix,
+            PublishBuffer batch, byte[] postfix, Executor executor)
+    {
+        published = published.exceptionally(t -> null).thenRunAsync(() -> {
+            try
+            {
+                publish(prefix, batch, postfix);
+            }
+            catch (IOException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        return published;
+    }
+
+
+    /**
+     * Writes a framed batch to the target, less any records rejected by the
+     * filter. Nothing is written if every record is rejected.
+     *
+     * @param prefix
+     *            bytes to precede the batch, may be empty
+     * @param batch
+     *            the batch
+     * @param postfix
+     *            bytes to follow the batch, may be empty
+     * @throws IOException
+     *             if the target could not be written to
+     */
+    final void write(byte[] prefix, PublishBuffer batch, byte[] postfix)
+            throws IOException
+    {
+        if (filter == null)
+        {
+            write(prefix, batch, new int[] { 0, batch.size() }, 2, postfix);
+            return;
+        }
+
+        int[] runs = new int[8];
+        int n = 0;
+        for (int from = 0, to; from < batch.size(); from = to)
+        /*
+         * Coalesce consecutive accepted records into runs
+         */
+        {
+            to = batch.recordEnd(from);
+            if (!batch.accept(filter, from, to))
+                continue;
+
+            if (n > 0 && runs[n - 1] == from)
+            {
+                runs[n - 1] = to;
+            }
+            else
+            {
+                if (n == runs.length)
+                    runs = Arrays.copyOf(runs, n << 1);
+                runs[n++] = from;
+                runs[n++] = to;
+            }
+        }
+
+        if (n > 0)
+            write(prefix, batch, runs, n, postfix);
+    }
+
+
+    /**
+     * Writes framed runs of a batch to the target
+     *
+     * @param prefix
+     *            bytes to precede the runs, may be empty
+     * @param batch
+     *            the batch
+     * @param runs
+     *            start and end index pairs of the runs
+     * @param n
+     *            the number of valid entries in {@code runs}
+     * @param postfix
+     *            bytes to follow the runs, may be empty
+     * @throws IOException
+     *             if the target could not be written to
+     */
+    abstract void write(byte[] prefix, PublishBuffer batch, int[] runs, int n,
+            byte[] postfix) throws IOException;
+
+
+    /**
+     * Flushes the target
+     *
+     * @throws IOException
+     *             if the target could not be flushed
+     */
+    abstract void flush() throws IOException;
+
+
+    /**
+     * Closes the target
+     *
+     * @throws IOException
+     *             if the target could not be closed
+     */
+    abstract void close() throws IOException;
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * {@code OutputStream} subscriber, receiving the prefix, batch and postfix
+     * as separate writes
+     */
+    static final class StreamSubscriber
+            extends Subscriber
+    {
+
+        /**
+         * The subscribing stream
+         */
+        private final OutputStream os;
+
+
+        /**
+         * @param os
+         *            the subscribing stream
+         * @param filter
+         *            the record filter, or null to receive everything
+         */
+        StreamSubscriber(OutputStream os, RecordFilter filter)
+        {
+            super(os, filter);
+            this.os = os;
+        }
+
+
+        @Override
+        void write(byte[] prefix, PublishBuffer batch, int[] runs, int n,
+                byte[] postfix) throws IOException
+        {
+            if (prefix.length > 0)
+                os.write(prefix);
+            for (int i = 0; i < n; i += 2)
+                batch.writeTo(os, runs[i], runs[i + 1]);
+            if (postfix.length > 0)
+                os.write(postfix);
+        }
+
+
+        @Override
+        void flush() throws IOException
+        {
+            os.flush();
+        }
+
+
+        @Override
+        void close() throws IOException
+        {
+            os.close();
+        }
+    }
+
+
+    /**
+     * {@code GatheringByteChannel} subscriber, receiving the prefix, batch
+     * and postfix in a single gathering write
+     * <p>
+     * The channel is expected to be in blocking mode.
+     */
+    static final class ChannelSubscriber
+            extends Subscriber
+    {
+
+        /**
+         * The subscribing channel
+         */
+        private final GatheringByteChannel channel;
+
+
+        /**
+         * @param channel
+         *            the subscribing channel
+         * @param filter
+         *            the record filter, or null to receive everything
+         */
+        ChannelSubscriber(GatheringByteChannel channel, RecordFilter filter)
+        {
+            super(channel, filter);
+            this.channel = channel;
+        }
+
+
+        @Override
+        void write(byte[] prefix, PublishBuffer batch, int[] runs, int n,
+                byte[] postfix) throws IOException
+        {
+            List<ByteBuffer> views = new ArrayList<>(n / 2 + 2);
+            views.add(ByteBuffer.wrap(prefix));
+            for (int i = 0; i < n; i += 2)
+                views.addAll(Arrays.asList(batch.view(runs[i], runs[i + 1])));
+            views.add(ByteBuffer.wrap(postfix));
+
+            ByteBuffer[] frame = views.toArray(new ByteBuffer[] {});
+            ByteBuffer last = frame[frame.length - 1];
+            do
+            /*
+             * Gathering writes may be partial, repeat until the frame is out
+             */
+            {
+                channel.write(frame);
+            }
+            while (last.hasRemaining() || frame[frame.length - 2].hasRemaining());
+        }
+
+
+        @Override
+        void flush()
+        {
+            /*
+             * Channels have no buffering to flush
+             */
+        }
+
+
+        @Override
+        void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pull based record reader over a {@code MulticastRingBuffer}
+ * <p>
+ * Returns the LF terminated records written to the ring, without their LF,
+ * at the pace of the reader: polled, waited for, or as futures completed when
+ * the next record is written. The reader holds only a partial record of its
+ * own, and writers never wait for it; a reader that falls a ring's capacity
+ * behind loses records, which shows in its lost bytes.
+ * <p>
+ * Used as an {@code Iterator}, {@code hasNext} blocks until a record is
+ * written or the ring is closed. When the ring is closed an unterminated last
+ * record is returned as is.
+ * <p>
+ * A reader is used by one thread, or one chain of futures, at a time.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public final class TailReader
+        implements Iterator<byte[]>, AutoCloseable
+{
+
+    /**
+     * The ring
+     */
+    private final MulticastRingBuffer ring;
+
+    /**
+     * This reader's cursor in the ring
+     */
+    private final MulticastRingBuffer.Cursor cursor;
+
+    /**
+     * Bytes read from the ring and not yet returned
+     */
+    private byte[] buffer = new byte[512];
+
+    /**
+     * Extent of the unreturned bytes in the buffer
+     */
+    private int start, end;
+
+    /**
+     * Cursor laps seen, to discard partial records on a lap
+     */
+    private long laps;
+
+    /**
+     * True once the cursor has reached the end of a closed ring
+     */
+    private boolean ended;
+
+    /**
+     * Partial record bytes discarded on laps
+     */
+    private long lostPartial;
+
+    /**
+     * Record read ahead by {@code hasNext}
+     */
+    private byte[] peeked;
+
+
+    /**
+     * @param ring
+     *            the ring
+     * @param cursor
+     *            the cursor to read with
+     */
+    TailReader(MulticastRingBuffer ring, MulticastRingBuffer.Cursor cursor)
+    {
+        this.ring = ring;
+        this.cursor = cursor;
+        this.laps = cursor.getLaps();
+    }
+
+
+    /**
+     * Returns the next record without blocking
+     *
+     * @return the record, or null if no whole record is available
+     */
+    public byte[] poll()
+    {
+        if (peeked != null)
+        {
+            byte[] record = peeked;
+            peeked = null;
+            return record;
+        }
+
+        while (true)
+        {
+            int lf = LineScanner.indexOf(buffer, start, end);
+            if (lf >= 0)
+            {
+                byte[] record = Arrays.copyOfRange(buffer, start, lf);
+                start = lf + 1;
+                return record;
+            }
+
+            int n = fill();
+            if (n > 0)
+                continue;
+
+            if (n < 0 && start < end)
+            /*
+             * Unterminated last record of a closed ring
+             */
+            {
+                byte[] record = Arrays.copyOfRange(buffer, start, end);
+                start = end;
+                return record;
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Waits for the next record
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the time unit of the timeout
+     * @return the record, or null if the wait timed out or the ring is closed
+     *         and all its records have been read
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public byte[] take(long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true)
+        {
+            byte[] record = poll();
+            if (record != null || isEnded())
+                return record;
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            ring.awaitSequence(cursor.getSequence(), remaining,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+
+    /**
+     * Returns a future completed with the next record, without holding a
+     * thread while waiting. A pending future is completed on the common
+     * {@code ForkJoinPool}.
+     *
+     * @return future completed with the record, or with null if the ring is
+     *         closed and all its records have been read
+     * @see #nextAsync(Executor)
+     */
+    public CompletableFuture<byte[]> nextAsync()
+    {
+        return nextAsync(ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Returns a future completed with the next record, without holding a
+     * thread while waiting.
+     * <p>
+     * A future still pending when the record is written is completed on the
+     * given executor, which reads the record, so neither the read nor the
+     * future's dependent stages run on the writing, usually logging, thread.
+     *
+     * @param executor
+     *            the executor to read and complete a pending record on
+     * @return future completed with the record, or with null if the ring is
+     *         closed and all its records have been read
+     */
+    public CompletableFuture<byte[]> nextAsync(Executor executor)
+    {
+        byte[] record = poll();
+        if (record != null || isEnded())
+            return CompletableFuture.completedFuture(record);
+
+        return ring.onSequence(cursor.getSequence(), executor)
+                .thenCompose(seq -> nextAsync(executor));
+    }
+
+
+    /**
+     * Waits for the next record, or for the ring to close.
+     * <p>
+     * Returns false if interrupted, with the interrupt status set.
+     *
+     * @see java.util.Iterator#hasNext()
+     */
+    @Override
+    public boolean hasNext()
+    {
+        try
+        {
+            while (peeked == null && !isEnded())
+                peeked = take(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return peeked != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.Iterator#next()
+     */
+    @Override
+    public byte[] next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return poll();
+    }
+
+
+    /**
+     * Returns true when the ring is closed and all its records have been
+     * read
+     *
+     * @return true at the end of the records
+     */
+    public boolean isEnded()
+    {
+        return ended && start == end && peeked == null;
+    }
+
+
+    /**
+     * Returns the sequence of the next byte to be read from the ring
+     *
+     * @return the sequence
+     */
+    public long getSequence()
+    {
+        return cursor.getSequence();
+    }
+
+
+    /**
+     * Returns the number of bytes written to the ring and not yet returned
+     *
+     * @return the lag in bytes
+     */
+    public long getLag()
+    {
+        return cursor.getLag() + end - start;
+    }
+
+
+    /**
+     * Returns the number of bytes lost to falling behind the ring
+     *
+     * @return the lost bytes
+     */
+    public long getLostBytes()
+    {
+        return cursor.getLostBytes() + lostPartial;
+    }
+
+
+    /**
+     * Detaches the reader from the ring
+     */
+    @Override
+    public void close()
+    {
+        cursor.close();
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    /**
+     * Reads available bytes from the ring into the buffer
+     *
+     * @return the number of bytes read, or -1 at the end of a closed ring
+     */
+    private int fill()
+    {
+        if (start > 0)
+        {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length << 1);
+
+        int n = cursor.read(buffer, end, buffer.length - end);
+        if (cursor.getLaps() != laps)
+        /*
+         * Lapped, bytes read resume on a record boundary so the partial
+         * record before them is lost
+         */
+        {
+            laps = cursor.getLaps();
+            lostPartial += end;
+            if (n > 0)
+                System.arraycopy(buffer, end, buffer, 0, n);
+            end = 0;
+        }
+
+        if (n < 0)
+            ended = true;
+        else
+            end += n;
+        return n;
+    }
+}
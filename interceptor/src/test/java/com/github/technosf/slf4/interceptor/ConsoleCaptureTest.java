@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class ConsoleCaptureTest
+{
+
+    @Test
+    public void capture()
+    {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        Logger logger = createNiceMock(Logger.class);
+        ConsoleCapture[] capture = new ConsoleCapture[1];
+
+        expect(logger.isWarnEnabled()).andStubReturn(true);
+        logger.warn("first line");
+        logger.warn("second line");
+        expectLastCall().andAnswer(() -> {
+            /*
+             * A backend printing to the captured stream
+             */
+            capture[0].getPrintStream().println("from the backend");
+            return null;
+        });
+        logger.warn("unterminated");
+        replay(logger);
+
+        capture[0] = new ConsoleCapture(
+                new PrintStream(console, true, StandardCharsets.UTF_8),
+                LogLevel.WARN, logger, StandardCharsets.UTF_8);
+        PrintStream out = capture[0].getPrintStream();
+        out.println("first line");
+        out.print("second ");
+        out.print("line\r\n\nunterminated");
+        capture[0].close();
+
+        verify(logger);
+        assertEquals(console.toString(), "first line\nsecond line\r\n\n"
+                + "unterminatedfrom the backend\n");
+    }
+
+
+    @Test
+    public void prompt()
+    {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        Logger logger = createNiceMock(Logger.class);
+        expect(logger.isInfoEnabled()).andStubReturn(true);
+        logger.info("Password: secret");
+        replay(logger);
+
+        ConsoleCapture capture = new ConsoleCapture(
+                new PrintStream(console, true, StandardCharsets.UTF_8),
+                LogLevel.INFO, logger, StandardCharsets.UTF_8);
+        PrintStream out = capture.getPrintStream();
+        out.print("Password: ");
+        out.flush();
+        assertEquals(console.toString(), "Password: ");
+
+        out.print("secret\n");
+        capture.close();
+        verify(logger);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.Interceptor.Mode;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class FormatProfilerTest
+{
+
+    @AfterMethod
+    public void restore()
+    {
+        LoggerInterceptor.setInterceptProfiler(false);
+        LoggerInterceptor.setInterceptorConfig(Mode.PASSTHROUGH, null);
+    }
+
+
+    @Test
+    public void profiled()
+    {
+        Logger logger = createNiceMock(Logger.class);
+        replay(logger);
+        LoggerInterceptor interceptor = new LoggerInterceptor(logger);
+        LoggerInterceptor.setInterceptorConfig(Mode.FILTER, null);
+
+        interceptor.info("not profiled {}", 0);
+        assertNull(LoggerInterceptor.getInterceptProfiler());
+
+        LoggerInterceptor.setInterceptProfiler(true);
+        String hot = "hot {} {} {}";
+        for (int i = 0; i < 100; i++)
+            interceptor.info(hot, i, i, i);
+        interceptor.warn("cold {}", 1);
+        interceptor.warn("plain");
+        interceptor.warn("built " + System.nanoTime());
+
+        FormatProfiler profiler = LoggerInterceptor.getInterceptProfiler();
+        List<FormatProfiler.Entry> top = profiler.getTop(10);
+        assertEquals(top.size(), 3);
+        /*
+         * Only format and match time is charged, so a single cold call can
+         * outrank the warmed hot one; find it by format rather than rank
+         */
+        FormatProfiler.Entry hottest = top.stream()
+                .filter(entry -> entry.getFormat() == hot).findFirst()
+                .orElseThrow();
+        assertEquals(hottest.getCalls(), 100);
+        assertTrue(hottest.getFormatNanos() > 0);
+        assertTrue(hottest.getFilterNanos() > 0);
+        assertEquals(profiler.getTop(1).size(), 1);
+        assertEquals(profiler.getTop(-1).size(), 0);
+        assertEquals(profiler.getUntracked().getCalls(), 0);
+        assertEquals(profiler.getUnformatted().getCalls(), 2);
+        assertTrue(top.stream().anyMatch(entry -> entry.toString()
+                .startsWith("<unformatted> calls=2 ")));
+
+        profiler.reset();
+        assertEquals(profiler.getTop(10).size(), 0);
+    }
+
+
+    @Test
+    public void sinkNotCharged()
+    {
+        Logger logger = createNiceMock(Logger.class);
+        replay(logger);
+        LoggerInterceptor interceptor = new LoggerInterceptor(logger);
+        LoggerInterceptor.setInterceptorConfig(Mode.FILTER, null);
+        LoggerInterceptor.setInterceptProfiler(true);
+        LoggerInterceptor.setInterceptOutputStream(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+            }
+
+
+            @Override
+            public void write(byte[] b, int off, int len)
+            {
+                try
+                {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try
+        {
+            interceptor.info("stalled {}", 1);
+        }
+        finally
+        {
+            LoggerInterceptor.setInterceptOutputStream(null);
+        }
+
+        /*
+         * The stalled sink is not charged to the format string
+         */
+        FormatProfiler.Entry entry =
+                LoggerInterceptor.getInterceptProfiler().getTop(1).get(0);
+        assertEquals(entry.getCalls(), 1);
+        assertTrue(entry.getTotalNanos() < TimeUnit.MILLISECONDS.toNanos(20),
+                entry.toString());
+    }
+
+
+    @Test
+    public void identity()
+    {
+        FormatProfiler profiler = new FormatProfiler(2);
+        String format = "a {}";
+        profiler.record(format, 1, 2);
+        profiler.record(format, 3, 4);
+        profiler.record(new String(format), 5, 6);
+
+        List<FormatProfiler.Entry> top = profiler.getTop(10);
+        assertEquals(top.size(), 2);
+        assertEquals(top.get(0).getTotalNanos(), 11);
+        assertEquals(top.get(1).getCalls(), 2);
+        assertEquals(top.get(1).getTotalNanos(), 10);
+        assertEquals(top.get(1).getMeanNanos(), 5.0);
+    }
+
+
+    @Test
+    public void bounded()
+    {
+        FormatProfiler profiler = new FormatProfiler(4);
+        for (int i = 0; i < 100; i++)
+            profiler.record("format " + i, 1, 1);
+
+        assertTrue(profiler.getTop(100).size() <= 8);
+        assertEquals(profiler.getTop(100).size()
+                + profiler.getUntracked().getCalls(), 100);
+        assertTrue(profiler.getUntracked().toString()
+                .startsWith("<untracked> calls="));
+    }
+
+
+    @Test
+    public void unformatted()
+    {
+        Logger logger = createNiceMock(Logger.class);
+        replay(logger);
+        LoggerInterceptor interceptor = new LoggerInterceptor(logger);
+        LoggerInterceptor.setInterceptorConfig(Mode.FILTER, null);
+        LoggerInterceptor.setInterceptProfiler(true);
+
+        /*
+         * One-off messages share a bucket rather than fill the table
+         */
+        for (int i = 0; i < 5000; i++)
+            interceptor.info("message " + i);
+        interceptor.info("format {}", 1);
+
+        FormatProfiler profiler = LoggerInterceptor.getInterceptProfiler();
+        assertEquals(profiler.getUnformatted().getCalls(), 5000);
+        assertEquals(profiler.getUntracked().getCalls(), 0);
+        assertEquals(profiler.getTop(10).size(), 2);
+    }
+}
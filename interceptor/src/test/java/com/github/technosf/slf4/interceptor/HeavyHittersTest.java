@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.util.SpaceSaving;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class HeavyHittersTest
+{
+
+    @AfterMethod
+    public void restore()
+    {
+        LoggerInterceptor.setInterceptHeavyHitters(0);
+    }
+
+
+    @Test
+    public void intercepted()
+    {
+        Logger noisy = logger("noisy"), quiet = logger("quiet");
+        LoggerInterceptor interceptor = new LoggerInterceptor(noisy);
+
+        interceptor.info("not counted");
+        assertNull(LoggerInterceptor.getInterceptHeavyHitters());
+
+        LoggerInterceptor.setInterceptHeavyHitters(16);
+        for (int i = 0; i < 50; i++)
+            interceptor.info("spam {}", i);
+        interceptor.warn("once");
+        new LoggerInterceptor(quiet).error("rare {} {}", 1, 2);
+
+        HeavyHitters hitters = LoggerInterceptor.getInterceptHeavyHitters();
+        SpaceSaving.Entry<String> top = hitters.getLoggers().getTop(1).get(0);
+        assertEquals(top.getKey(), "noisy");
+        assertEquals(top.getCount(), 51);
+        assertEquals(top.getError(), 0);
+        assertEquals(hitters.getFormats().getTop(1).get(0).getKey(),
+                "spam {}");
+        assertEquals(hitters.getFormats().getTotal(), 52);
+
+        hitters.reset();
+        assertEquals(hitters.getLoggers().getTop(10).size(), 0);
+    }
+
+
+    @Test
+    public void unformatted()
+    {
+        LoggerInterceptor interceptor =
+                new LoggerInterceptor(logger("builder"));
+        LoggerInterceptor.setInterceptHeavyHitters(16);
+
+        /*
+         * Distinct concatenated messages share one key, rather than evict
+         * the real format strings
+         */
+        for (int i = 0; i < 5000; i++)
+        {
+            interceptor.info("built " + i);
+            if (i % 10 == 0)
+                interceptor.info("real {}", i);
+        }
+
+        SpaceSaving<String> formats =
+                LoggerInterceptor.getInterceptHeavyHitters().getFormats();
+        List<SpaceSaving.Entry<String>> top = formats.getTop(2);
+        assertEquals(top.get(0).getKey(), HeavyHitters.UNFORMATTED);
+        assertEquals(top.get(0).getCount(), 5000);
+        assertEquals(top.get(1).getKey(), "real {}");
+        assertEquals(top.get(1).getCount(), 500);
+        assertEquals(top.get(1).getError(), 0);
+        assertEquals(formats.getTop(100).size(), 2);
+    }
+
+
+    @Test
+    public void skewed() throws InterruptedException
+    {
+        SpaceSaving<String> sketch = new SpaceSaving<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++)
+        {
+            Random random = new Random(t);
+            executor.execute(() -> {
+                for (int i = 0; i < 20_000; i++)
+                    /*
+                     * A tenth each to hot 0 to 4, the rest spread thinly
+                     */
+                    sketch.offer(random.nextInt(2) == 0
+                            ? "hot " + random.nextInt(5)
+                            : "cold " + random.nextInt(10_000));
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(sketch.getTotal(), 80_000);
+        assertEquals(new SpaceSaving<String>(100).getCapacity(), 100);
+        assertEquals(sketch.getTop(-1).size(), 0);
+        List<SpaceSaving.Entry<String>> top = sketch.getTop(5);
+        assertEquals(top.size(), 5);
+        for (SpaceSaving.Entry<String> entry : top)
+        {
+            assertTrue(entry.getKey().startsWith("hot "), entry.toString());
+            assertTrue(entry.getCount() >= 7_000, entry.toString());
+        }
+    }
+
+
+    /**
+     * @param name
+     *            a logger name
+     * @return a nice mock logger with the name
+     */
+    private static Logger logger(String name)
+    {
+        Logger logger = createNiceMock(Logger.class);
+        expect(logger.getName()).andStubReturn(name);
+        replay(logger);
+        return logger;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.slf4j.Logger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.Interceptor.Mode;
+import com.github.technosf.slf4.interceptor.InterceptorMetrics.Outcome;
+import com.github.technosf.slf4.interceptor.util.LatencyHistogram;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class InterceptorMetricsTest
+{
+
+    @AfterMethod
+    public void restore()
+    {
+        LoggerInterceptor.setInterceptMetrics(false);
+        LoggerInterceptor.setInterceptorMode(Mode.PASSTHROUGH);
+        LoggerInterceptor.setInterceptorFilter(null);
+    }
+
+
+    @Test
+    public void outcomes()
+    {
+        Logger logger = createNiceMock(Logger.class);
+        replay(logger);
+        LoggerInterceptor interceptor = new LoggerInterceptor(logger);
+
+        interceptor.info("not counted");
+        assertNull(LoggerInterceptor.getInterceptMetrics());
+
+        LoggerInterceptor.setInterceptMetrics(true);
+        interceptor.info("passed");
+        LoggerInterceptor.setInterceptorMode(Mode.ABSORB);
+        interceptor.warn("absorbed");
+        LoggerInterceptor.setInterceptorMode(Mode.FILTER);
+        LoggerInterceptor.setInterceptorFilter("secret.*");
+        interceptor.error("secret {}", 1);
+        interceptor.error("public {} {}", 1, 2);
+        LoggerInterceptor.setInterceptorMode(Mode.DUPLICATE);
+        interceptor.debug("secret", new RuntimeException());
+
+        InterceptorMetrics.Snapshot snapshot =
+                LoggerInterceptor.getInterceptMetrics().snapshot();
+        assertEquals(snapshot.getTotal(), 5);
+        assertEquals(snapshot.getCount(LogLevel.INFO, Outcome.PASSED), 1);
+        assertEquals(snapshot.getCount(LogLevel.WARN, Outcome.ABSORBED), 1);
+        assertEquals(snapshot.getCount(LogLevel.ERROR, Outcome.FILTERED), 1);
+        assertEquals(snapshot.getCount(LogLevel.ERROR, Outcome.DUPLICATED), 1);
+        assertEquals(snapshot.getCount(LogLevel.ERROR), 2);
+        assertEquals(snapshot.getCount(Outcome.DUPLICATED), 2);
+        assertEquals(snapshot.getInterceptLatency().getCount(), 5);
+        assertEquals(snapshot.getSinkLatency().getCount(), 3);
+    }
+
+
+    @Test
+    public void histogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++)
+            histogram.record(100);
+        histogram.record(0);
+        histogram.record(5000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(snapshot.getCount(), 100);
+        assertEquals(snapshot.getBucketCount(0), 1);
+        assertEquals(snapshot.getBucketCount(7), 98); // 64 to 127
+        assertEquals(snapshot.getMax(), 5000);
+        assertEquals(snapshot.getSum(), 98 * 100 + 5000);
+        assertEquals(snapshot.getPercentile(1), 0);
+        assertEquals(snapshot.getPercentile(50), 128);
+        assertEquals(snapshot.getPercentile(100), 5000);
+        assertTrue(snapshot.toString().startsWith("count=100 "));
+
+        histogram.reset();
+        assertEquals(histogram.snapshot().getCount(), 0);
+        assertEquals(histogram.snapshot().getPercentile(99), 0);
+    }
+}
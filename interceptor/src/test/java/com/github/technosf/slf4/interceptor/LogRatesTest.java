@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.util.RateSeries;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class LogRatesTest
+{
+
+    @AfterMethod
+    public void restore()
+    {
+        LoggerInterceptor.setInterceptRates(0, TimeUnit.SECONDS);
+    }
+
+
+    @Test
+    public void intercepted()
+    {
+        Logger logger = createNiceMock(Logger.class);
+        expect(logger.getName()).andStubReturn("app");
+        replay(logger);
+        LoggerInterceptor interceptor = new LoggerInterceptor(logger);
+
+        interceptor.error("not counted");
+        assertNull(LoggerInterceptor.getInterceptRates());
+
+        LoggerInterceptor.setInterceptRates(10, TimeUnit.MINUTES);
+        interceptor.error("failed {}", 1);
+        interceptor.info("ok");
+
+        LogRates rates = LoggerInterceptor.getInterceptRates();
+        assertEquals(rates.getHistoryMillis(), 600_000);
+        assertTrue(rates.getLoggers().contains("app"));
+        assertEquals(rates.snapshot("app").getBuckets(), 600);
+    }
+
+
+    @Test
+    public void rates()
+    {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        LogRates rates = new LogRates(10, TimeUnit.SECONDS, 4, 1,
+                TimeUnit.SECONDS, clock::get);
+
+        for (int s = 0; s < 20; s++)
+        {
+            for (int i = 0; i < s; i++)
+                rates.record("a", LogLevel.ERROR);
+            rates.record("b", LogLevel.INFO);
+            rates.record(null, LogLevel.INFO);
+            clock.addAndGet(1000);
+        }
+
+        /*
+         * Whole seconds 10 to 19 are held, 19 the most recent
+         */
+        assertEquals(rates.getCount("a", LogLevel.ERROR, 1, TimeUnit.SECONDS),
+                19);
+        assertEquals(rates.getCount("a", null, 3, TimeUnit.SECONDS),
+                17 + 18 + 19);
+        assertEquals(rates.getCount("a", LogLevel.INFO, 3, TimeUnit.SECONDS),
+                0);
+        assertEquals(rates.getCount("a", null, 1, TimeUnit.HOURS), 145);
+        assertEquals(rates.getRate("a", LogLevel.ERROR, 10, TimeUnit.SECONDS),
+                14.5);
+        assertEquals(rates.getRate(null, LogLevel.INFO, 10, TimeUnit.SECONDS),
+                2.0);
+        assertEquals(rates.getRate("c", null, 10, TimeUnit.SECONDS), 0.0);
+
+        LogRates.Snapshot snapshot = rates.snapshot("a");
+        assertEquals(snapshot.getBuckets(), 10);
+        assertEquals(snapshot.getStartMillis(), 1_010_000);
+        assertEquals(snapshot.getCount(0, LogLevel.ERROR), 10);
+        assertEquals(snapshot.getCount(9), 19);
+        assertEquals(rates.snapshot(null).getCount(9, LogLevel.INFO), 2);
+
+        /*
+         * The current, partly elapsed, second is not counted until it ends
+         */
+        rates.record("a", LogLevel.ERROR);
+        assertEquals(rates.getCount("a", null, 1, TimeUnit.SECONDS), 19);
+        clock.addAndGet(1000);
+        assertEquals(rates.getCount("a", null, 1, TimeUnit.SECONDS), 1);
+    }
+
+
+    @Test
+    public void bounded()
+    {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        LogRates rates = new LogRates(10, TimeUnit.SECONDS, 2, 1,
+                TimeUnit.SECONDS, clock::get);
+        assertEquals(rates.getMaxLoggers(), 2);
+
+        for (int i = 0; i < 100; i++)
+            rates.record("logger " + i, LogLevel.WARN);
+        rates.record("logger 1", LogLevel.WARN);
+        clock.addAndGet(1000);
+
+        /*
+         * Loggers beyond the first two are counted only in the total
+         */
+        assertEquals(rates.getLoggers().size(), 2);
+        assertEquals(rates.getCount("logger 1", null, 1, TimeUnit.SECONDS),
+                2);
+        assertEquals(rates.getCount("logger 2", null, 1, TimeUnit.SECONDS),
+                0);
+        assertEquals(rates.getCount(null, null, 1, TimeUnit.SECONDS), 101);
+    }
+
+
+    @Test
+    public void series()
+    {
+        RateSeries series = new RateSeries(4, 2);
+        series.increment(7, 1);
+        series.increment(7, 1);
+        series.increment(8, 0);
+        assertEquals(series.get(7, 1), 2);
+        assertEquals(series.sum(8, 2, 1), 2);
+
+        /*
+         * Bucket 11 reuses the cells of 7, restarting the count
+         */
+        series.increment(11, 1);
+        assertEquals(series.get(11, 1), 1);
+        assertEquals(series.get(7, 1), 0);
+        assertEquals(series.sum(11, 100, 0), 1);
+    }
+}
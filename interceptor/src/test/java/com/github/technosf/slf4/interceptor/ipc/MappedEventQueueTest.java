@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.ipc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+import com.github.technosf.slf4.interceptor.LogLevel;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class MappedEventQueueTest
+{
+
+    @Test
+    public void producers() throws IOException, InterruptedException
+    {
+        Path file = Files.createTempFile("queue", ".map");
+        Files.delete(file);
+        MappedEventQueue queue = new MappedEventQueue(file, 1 << 20);
+        MappedEventReader reader = new MappedEventReader(file, 0);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            String logger = "thread" + t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++)
+                    queue.offer(new InterceptedEvent(LogLevel.INFO, logger,
+                            "message " + i, i, null));
+            });
+            threads[t].start();
+        }
+
+        Set<String> seen = new HashSet<>();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (seen.size() < 2000 && System.currentTimeMillis() < deadline)
+        {
+            InterceptedEvent event = reader.poll();
+            if (event == null)
+                Thread.onSpinWait();
+            else
+                assertTrue(seen.add(
+                        event.getLoggerName() + " " + event.getMessage()));
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(seen.size(), 2000);
+        assertNull(reader.poll());
+        assertEquals(queue.getAppended(), 2000);
+        assertEquals(reader.getLostBytes(), 0);
+        assertEquals(reader.getPosition(), queue.getTail());
+        queue.close();
+    }
+
+
+    @Test
+    public void lapped() throws IOException
+    {
+        Path file = Files.createTempFile("queue", ".map");
+        Files.delete(file);
+        MappedEventQueue queue = new MappedEventQueue(file, 1024);
+        MappedEventReader behind = new MappedEventReader(file);
+
+        for (int i = 0; i < 100; i++)
+            queue.offer(new InterceptedEvent(LogLevel.WARN, "lap",
+                    "message " + i, i, null));
+        assertTrue(queue.getTail() > 1024);
+
+        /*
+         * Only the records still in the ring are readable after the skip
+         */
+        assertNull(behind.poll());
+        assertTrue(behind.getLostBytes() > 0);
+        assertEquals(behind.getPosition(), queue.getTail());
+
+        queue.offer(new InterceptedEvent(LogLevel.WARN, "lap", "next", 100,
+                null));
+        assertEquals(behind.poll().getMessage(), "next");
+
+        assertEquals(
+                queue.offer(new InterceptedEvent(LogLevel.WARN, "lap",
+                        "x".repeat(600), 101, null)),
+                false);
+        assertEquals(queue.getRejected(), 1);
+
+        /*
+         * A reader resuming from an old position after a restart
+         */
+        MappedEventReader resumed = new MappedEventReader(file, 0);
+        assertNull(resumed.poll());
+        assertEquals(resumed.getLostBytes(), queue.getTail());
+    }
+
+
+    @Test(expectedExceptions = IOException.class)
+    public void capacityMismatch() throws IOException
+    {
+        Path file = Files.createTempFile("queue", ".map");
+        Files.delete(file);
+        new MappedEventQueue(file, 2048).close();
+        new MappedEventQueue(file, 4096);
+    }
+}
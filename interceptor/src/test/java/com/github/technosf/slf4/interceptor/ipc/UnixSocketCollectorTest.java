@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.ipc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.InterceptedEvent;
+import com.github.technosf.slf4.interceptor.LogLevel;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class UnixSocketCollectorTest
+{
+
+    @Test
+    public void codec()
+    {
+        byte[] first = EventCodec.encode(new InterceptedEvent(LogLevel.WARN,
+                "com.a", "héllo", 42, new IllegalStateException("bad")));
+        byte[] second = EventCodec.encode(
+                new InterceptedEvent(LogLevel.INFO, "com.b", "bye", 43, null));
+
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + 3);
+        buffer.put(first).put(second, 0, 3).flip();
+        InterceptedEvent event = EventCodec.decode(buffer);
+        assertEquals(event.toString(), "42 WARN com.a - héllo "
+                + "java.lang.IllegalStateException: bad");
+        assertNull(EventCodec.decode(buffer));
+        assertEquals(buffer.remaining(), 3);
+    }
+
+
+    @Test
+    public void merge() throws IOException, InterruptedException
+    {
+        Path socket = Files.createTempDirectory("ipc").resolve("collector");
+        long base = System.currentTimeMillis() + 60000; // held until close
+
+        /*
+         * Started before the collector, so must reconnect
+         */
+        UnixSocketSink early = new UnixSocketSink(socket, 16);
+        early.offer(event(base + 10));
+        early.offer(event(base + 30));
+
+        List<Long> merged = Collections.synchronizedList(new ArrayList<>());
+        UnixSocketCollector collector = new UnixSocketCollector(socket, 50,
+                e -> merged.add(e.getTimestamp()));
+        UnixSocketSink late = new UnixSocketSink(socket, 16);
+        late.offer(event(base + 40));
+        late.offer(event(base + 20));
+
+        for (int i = 0; i < 500 && collector.getReceived() < 4; i++)
+            Thread.sleep(10);
+        early.close();
+        late.close();
+        collector.close();
+
+        assertEquals(merged,
+                List.of(base + 10, base + 20, base + 30, base + 40));
+        assertEquals(early.getWritten() + late.getWritten(), 4);
+        assertEquals(collector.getLate(), 0);
+    }
+
+
+    private static InterceptedEvent event(long timestamp)
+    {
+        return new InterceptedEvent(LogLevel.INFO, "com.a", "at " + timestamp,
+                timestamp, null);
+    }
+}
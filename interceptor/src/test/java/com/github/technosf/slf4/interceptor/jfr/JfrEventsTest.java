@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.jfr;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.Interceptor.Mode;
+import com.github.technosf.slf4.interceptor.LoggerInterceptor;
+import com.github.technosf.slf4.interceptor.util.MultiplexOutputStream;
+import com.github.technosf.slf4.interceptor.util.MultiplexOutputStream.BufferOverflowPolicy;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class JfrEventsTest
+{
+
+    @AfterMethod
+    public void restore()
+    {
+        LoggerInterceptor.setInterceptorConfig(Mode.PASSTHROUGH, null);
+    }
+
+
+    @Test
+    public void disabled()
+    {
+        assertNull(InterceptEvent.start());
+        assertNull(SinkFlushEvent.start());
+    }
+
+
+    @Test
+    public void recorded() throws IOException
+    {
+        Path file = Files.createTempFile("interceptor", ".jfr");
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording())
+        {
+            recording.enable(InterceptEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(SinkFlushEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(QueueOverflowEvent.class);
+            recording.start();
+
+            Logger logger = createNiceMock(Logger.class);
+            replay(logger);
+            LoggerInterceptor.setInterceptorConfig(Mode.FILTER, "secret.*");
+            LoggerInterceptor interceptor = new LoggerInterceptor(logger);
+            interceptor.info("public {}", 1);
+            interceptor.info("secret");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MultiplexOutputStream mos = new MultiplexOutputStream(out)
+                    .setBufferLimits(64, 64, 64, BufferOverflowPolicy.DROP);
+            mos.write("line\n".getBytes());
+            mos.flush();
+            mos.write(new byte[128]);
+            mos.close();
+
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+
+        List<RecordedEvent> intercepts = named(events, "Intercept");
+        assertEquals(intercepts.size(), 2);
+        RecordedEvent formatted = intercepts.get(0);
+        assertEquals(formatted.getString("level"), "INFO");
+        assertEquals(formatted.getString("outcome"), "DUPLICATED");
+        assertTrue(formatted.getLong("formatNanos") > 0);
+        assertTrue(formatted.getLong("sinkNanos") >= 0);
+        assertTrue(formatted.getLong("filterNanos") >= 0);
+        assertEquals(intercepts.get(1).getString("outcome"), "FILTERED");
+
+        assertTrue(named(events, "SinkFlush").stream()
+                .anyMatch(e -> e.getLong("bytes") == 5
+                        && e.getInt("subscribers") == 1));
+
+        List<RecordedEvent> overflows = named(events, "QueueOverflow");
+        assertEquals(overflows.size(), 1);
+        assertEquals(overflows.get(0).getString("queue"),
+                "MultiplexOutputStream");
+        assertEquals(overflows.get(0).getString("policy"), "DROP");
+        assertEquals(overflows.get(0).getLong("droppedBytes"), 128);
+    }
+
+
+    /**
+     * @param events
+     *            recorded events
+     * @param name
+     *            an event name, without the package prefix
+     * @return the events with the name
+     */
+    private static List<RecordedEvent> named(List<RecordedEvent> events,
+            String name)
+    {
+        String full = "com.github.technosf.slf4.interceptor." + name;
+        return events.stream()
+                .filter(e -> e.getEventType().getName().equals(full))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.jmx;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
+
+import org.slf4j.Logger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.Interceptor;
+import com.github.technosf.slf4.interceptor.Interceptor.Mode;
+import com.github.technosf.slf4.interceptor.LoggerInterceptor;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class InterceptorControlTest
+{
+
+    @AfterMethod
+    public void restore()
+    {
+        LoggerInterceptor.setInterceptMetrics(false);
+        LoggerInterceptor.setInterceptProfiler(false);
+        LoggerInterceptor.setInterceptRates(0, TimeUnit.SECONDS);
+        LoggerInterceptor.setInterceptorConfig(Mode.PASSTHROUGH, null);
+    }
+
+
+    @Test
+    public void control() throws JMException
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = InterceptorControl.register(server);
+
+        server.invoke(name, "configure", new Object[] { "filter", "secret.*" },
+                new String[] { String.class.getName(),
+                        String.class.getName() });
+        assertEquals(LoggerInterceptor.getInterceptorMode(), Mode.FILTER);
+        assertEquals(LoggerInterceptor.getInterceptorFilter(), "secret.*");
+
+        server.setAttribute(name, new Attribute("Filter", ""));
+        assertEquals(server.getAttribute(name, "Filter"),
+                Interceptor.REGEX_MATCH_ALL);
+        server.setAttribute(name, new Attribute("Filter", "secret.*"));
+
+        assertFalse((Boolean) server.getAttribute(name, "MetricsEnabled"));
+        server.setAttribute(name, new Attribute("MetricsEnabled", true));
+        server.setAttribute(name, new Attribute("ProfilerEnabled", true));
+        server.setAttribute(name, new Attribute("RateHistorySeconds", 60L));
+        assertEquals(server.getAttribute(name, "RateHistorySeconds"), 60L);
+
+        Logger logger = createNiceMock(Logger.class);
+        replay(logger);
+        LoggerInterceptor interceptor = new LoggerInterceptor(logger);
+        interceptor.info("secret");
+        interceptor.info("public");
+
+        assertEquals(server.getAttribute(name, "InterceptedCount"), 2L);
+        assertEquals(server.getAttribute(name, "FilteredCount"), 1L);
+        assertEquals(server.getAttribute(name, "DuplicatedCount"), 1L);
+        assertTrue((Long) server.getAttribute(name, "InterceptLatency99") > 0);
+        String[] top = (String[]) server.invoke(name, "topFormats",
+                new Object[] { 1 }, new String[] { int.class.getName() });
+        assertEquals(top.length, 1);
+        /*
+         * Only whole seconds are counted, so the two calls show only if a
+         * second has ended since
+         */
+        double rate = (Double) server.invoke(name, "rate",
+                new Object[] { "", "info", 60 },
+                new String[] { String.class.getName(), String.class.getName(),
+                        int.class.getName() });
+        assertTrue(rate >= 0 && rate <= 2 / 60.0, Double.toString(rate));
+
+        server.invoke(name, "resetMetrics", null, null);
+        assertEquals(server.getAttribute(name, "InterceptedCount"), 0L);
+
+        server.setAttribute(name, new Attribute("Mode", "absorb"));
+        assertEquals(server.getAttribute(name, "Mode"), "ABSORB");
+        assertEquals(server.getAttribute(name, "Filter"), "secret.*");
+        assertEquals(server.getAttribute(name, "EventQueueDepth"), 0L);
+    }
+
+
+    @Test(expectedExceptions = RuntimeMBeanException.class)
+    public void badFilter() throws JMException
+    {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = InterceptorControl.register(server);
+        try
+        {
+            server.setAttribute(name, new Attribute("Filter", "(unclosed"));
+        }
+        finally
+        {
+            assertEquals(LoggerInterceptor.getInterceptorFilter(),
+                    Interceptor.REGEX_MATCH_ALL);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.util.AsyncOutputStream.OverflowPolicy;
+
+public class AsyncOutputStreamTest
+{
+
+    /**
+     * A subscriber that blocks until released
+     */
+    static class GatedOutputStream
+            extends ByteArrayOutputStream
+    {
+        final CountDownLatch gate = new CountDownLatch(1);
+
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+        {
+            try
+            {
+                gate.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            super.write(b, off, len);
+        }
+    }
+
+
+    @Test
+    public void dropNewest() throws IOException, InterruptedException
+    {
+        GatedOutputStream slow = new GatedOutputStream();
+        ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(fast);
+        AsyncOutputStream async = mos.addAsyncOutputStream(slow, 1,
+                OverflowPolicy.DROP_NEWEST, Thread::new);
+
+        for (int i = 0; i < 5; i++)
+        {
+            mos.write(("line " + i + "\n").getBytes());
+            mos.flush();
+        }
+
+        assertEquals(fast.toString().split("\n").length, 5);
+        assertTrue(async.getDroppedBatches() > 0);
+        assertTrue(async.getLag() > 0);
+
+        slow.gate.countDown();
+        mos.close();
+    }
+
+
+    @Test
+    public void disconnect() throws IOException
+    {
+        GatedOutputStream slow = new GatedOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream();
+        OutputStream async = mos.addAsyncOutputStream(slow, 1,
+                OverflowPolicy.DISCONNECT, Thread::new);
+
+        for (int i = 0; i < 5; i++)
+        {
+            mos.write(("line " + i + "\n").getBytes());
+            mos.flush();
+        }
+
+        assertFalse(mos.hasOutputStream(async));
+        slow.gate.countDown();
+    }
+
+
+    @Test
+    public void failedTargetClosed() throws IOException, InterruptedException
+    {
+        CountDownLatch closed = new CountDownLatch(1);
+        OutputStream failing = new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("Broken");
+            }
+
+
+            @Override
+            public void close()
+            {
+                closed.countDown();
+            }
+        };
+        AsyncOutputStream async = new AsyncOutputStream(failing, 4,
+                OverflowPolicy.BLOCK, Thread::new);
+
+        async.write("line\n".getBytes());
+        async.flush();
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertTrue(async.isClosed());
+    }
+}
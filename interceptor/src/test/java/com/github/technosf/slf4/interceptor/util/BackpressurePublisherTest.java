@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.slf4.interceptor.util.AsyncOutputStream.OverflowPolicy;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class BackpressurePublisherTest
+{
+
+    /**
+     * Subscriber recording what it is sent
+     */
+    static class RecordingSubscriber<T>
+            implements Flow.Subscriber<T>
+    {
+        final List<T> items = new ArrayList<>();
+
+        final long initial;
+
+        Flow.Subscription subscription;
+
+        Throwable error;
+
+        boolean complete;
+
+
+        RecordingSubscriber(long initial)
+        {
+            this.initial = initial;
+        }
+
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            if (initial > 0)
+                subscription.request(initial);
+        }
+
+
+        @Override
+        public void onNext(T item)
+        {
+            items.add(item);
+        }
+
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+        }
+
+
+        @Override
+        public void onComplete()
+        {
+            complete = true;
+        }
+    }
+
+
+    @Test
+    public void demand()
+    {
+        BackpressurePublisher<String> publisher = new BackpressurePublisher<>(
+                Runnable::run, 2, OverflowPolicy.DROP_OLDEST);
+        RecordingSubscriber<String> single = new RecordingSubscriber<>(1);
+        RecordingSubscriber<List<String>> batched =
+                new RecordingSubscriber<>(0);
+        publisher.subscribe(single);
+        publisher.batches(2).subscribe(batched);
+        assertEquals(publisher.getSubscriberCount(), 2);
+
+        for (String item : new String[] { "a", "b", "c", "d" })
+            publisher.submit(item);
+        assertEquals(single.items, List.of("a"));
+        assertTrue(batched.items.isEmpty());
+        assertEquals(publisher.getDroppedCount(), 3);
+
+        single.subscription.request(5);
+        batched.subscription.request(1);
+        assertEquals(single.items, List.of("a", "c", "d"));
+        assertEquals(batched.items, List.of(List.of("c", "d")));
+
+        publisher.close();
+        assertTrue(single.complete);
+        assertTrue(batched.complete);
+        assertFalse(publisher.hasSubscribers());
+    }
+
+
+    @Test
+    public void disconnect()
+    {
+        List<Flow.Subscriber<?>> disconnected = new ArrayList<>();
+        BackpressurePublisher<String> publisher = new BackpressurePublisher<>(
+                Runnable::run, 1, OverflowPolicy.DISCONNECT)
+        {
+            @Override
+            protected void disconnected(Flow.Subscriber<?> subscriber)
+            {
+                assertNull(((RecordingSubscriber<?>) subscriber).error);
+                disconnected.add(subscriber);
+            }
+        };
+        RecordingSubscriber<String> slow = new RecordingSubscriber<>(0);
+        publisher.subscribe(slow);
+
+        publisher.submit("a");
+        assertTrue(disconnected.isEmpty());
+        publisher.submit("b");
+        assertEquals(disconnected, List.of(slow));
+        assertTrue(slow.error instanceof IllegalStateException);
+        assertFalse(publisher.hasSubscribers());
+        assertEquals(publisher.getDroppedCount(), 2);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class LineScannerTest
+{
+
+    @Test
+    public void againstNaiveScan()
+    {
+        Random random = new Random(20160517);
+        for (int n = 0; n < 2000; n++)
+        {
+            byte[] b = new byte[random.nextInt(40)];
+            for (int i = 0; i < b.length; i++)
+                /*
+                 * Sprinkle LFs among bytes either side of LF
+                 */
+                b[i] = (byte) (random.nextInt(8) == 0 ? 10
+                        : 8 + random.nextInt(5) + (random.nextBoolean() ? 128 : 0));
+
+            int from = b.length == 0 ? 0 : random.nextInt(b.length);
+            int to = from + random.nextInt(b.length - from + 1);
+
+            assertEquals(LineScanner.indexOf(b, from, to), naiveIndexOf(b, from, to));
+            assertEquals(LineScanner.lastIndexOf(b, from, to), naiveLastIndexOf(b, from, to));
+        }
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    private int naiveIndexOf(byte[] b, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+            if (b[i] == 10)
+                return i;
+        return -1;
+    }
+
+
+    private int naiveLastIndexOf(byte[] b, int from, int to)
+    {
+        for (int i = to - 1; i >= from; i--)
+            if (b[i] == 10)
+                return i;
+        return -1;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class MulticastRingBufferTest
+{
+
+    @Test
+    public void multicast() throws IOException
+    {
+        MulticastRingBuffer ring = new MulticastRingBuffer(60);
+        assertEquals(ring.getCapacity(), 64);
+
+        MultiplexOutputStream mos = new MultiplexOutputStream(ring);
+        MulticastRingBuffer.Cursor fast = ring.subscribe(),
+                slow = ring.subscribe();
+
+        mos.write("line one\nline two\n".getBytes());
+        mos.flush();
+        assertEquals(read(fast), "line one\nline two\n");
+        assertEquals(slow.getLag(), 18);
+        assertEquals(ring.getSlowCursors(10).length, 1);
+
+        for (int i = 0; i < 8; i++)
+        {
+            mos.write(("record " + i + "\n").getBytes());
+            if (i % 4 == 3)
+            {
+                mos.flush();
+                assertEquals(read(fast).length(), 36);
+            }
+        }
+        assertEquals(fast.getLostBytes(), 0);
+
+        /*
+         * 90 bytes behind in a 64 byte ring, resumes on a record boundary
+         */
+        assertEquals(read(slow), "record 1\nrecord 2\nrecord 3\nrecord 4\n"
+                + "record 5\nrecord 6\nrecord 7\n");
+        assertEquals(slow.getLaps(), 1);
+        assertEquals(slow.getLostBytes(), 27);
+        assertEquals(slow.getLag(), 0);
+
+        slow.close();
+        assertEquals(ring.getCursors().length, 1);
+        ring.close();
+        assertEquals(fast.read(new byte[1], 0, 1), -1);
+    }
+
+
+    /**
+     * Reads what is available through a cursor
+     */
+    private static String read(MulticastRingBuffer.Cursor cursor)
+    {
+        StringBuilder sb = new StringBuilder();
+        byte[] b = new byte[16];
+        for (int n; (n = cursor.read(b, 0, b.length)) > 0;)
+            sb.append(new String(b, 0, n));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Scaling benchmark for {@code MultiplexOutputStream}
+ * <p>
+ * Many threads log lines through one auto-flushing stream whose subscriber
+ * blocks briefly on every flush, as a socket or disk would. Run with platform
+ * threads and, on runtimes that have them, virtual threads:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *      com.github.technosf.slf4.interceptor.util.MultiplexOutputStreamBenchmark [threads] [lines]
+ * </pre>
+ *
+ * Not a unit test, so not run by the build.
+ *
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class MultiplexOutputStreamBenchmark
+{
+
+    /**
+     * Subscriber that parks for a while on each flush, simulating IO
+     */
+    static class BlockingOutputStream
+            extends OutputStream
+    {
+        @Override
+        public void write(int b)
+        {
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+        }
+
+
+        @Override
+        public void flush()
+        {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception
+    {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int lines = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        run("platform", Thread::new, threads, lines);
+
+        ThreadFactory virtual = virtualThreadFactory();
+        if (virtual == null)
+            System.out.println("virtual  : not supported by this runtime");
+        else
+            run("virtual", virtual, threads, lines);
+    }
+
+
+    /**
+     * Times the threads writing their lines
+     */
+    private static void run(String name, ThreadFactory factory, int threads,
+            int lines) throws InterruptedException
+    {
+        MultiplexOutputStream mos = new MultiplexOutputStream(
+                new BlockingOutputStream()).setAutoFlush(true);
+        byte[] line = "A benchmark log line of moderate length\n".getBytes();
+
+        List<Thread> workers = new ArrayList<>(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++)
+        {
+            Thread worker = factory.newThread(() -> {
+                try
+                {
+                    for (int i = 0; i < lines; i++)
+                        mos.write(line);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers)
+            worker.join();
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("%-9s: %d threads x %d lines in %d ms, %.0f lines/s%n",
+                name, threads, lines, TimeUnit.NANOSECONDS.toMillis(nanos),
+                threads * (double) lines / nanos * 1e9);
+    }
+
+
+    /**
+     * Returns a virtual thread factory when the runtime supports them. Looked
+     * up reflectively as the build targets a release without them.
+     */
+    private static ThreadFactory virtualThreadFactory()
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+}
@@ -20,10 +20,20 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertEqualsNoOrder;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -90,6 +100,319 @@ public class MultiplexOutputStreamTest //extends EasyMockSupport
     }
 
 
+    @Test
+    public void copyOnWriteSubscribers()
+    {
+        MultiplexOutputStream mos = new MultiplexOutputStream(os1);
+        OutputStream[] snapshot = mos.getOutputStreams();
+
+        assertFalse(mos.addOutputStreams(os1));
+        assertTrue(mos.addOutputStreams(os2, os3));
+        assertEquals(snapshot.length, 1);
+        assertEquals(mos.getOutputStreams().length, 3);
+        assertTrue(mos.hasOutputStream(os2));
+
+        assertTrue(mos.removeOutputStreams(os2));
+        assertFalse(mos.removeOutputStreams(os2));
+        assertEqualsNoOrder(mos.getOutputStreams(),
+                new OutputStream[] { os1, os3 });
+    }
+
+
+    @Test
+    public void gatheringChannel() throws IOException
+    {
+        Path file = Files.createTempFile("multiplex", ".log");
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE))
+        {
+            MultiplexOutputStream mos = new MultiplexOutputStream()
+                    .setPrefix("[".getBytes()).setPostfix("]".getBytes());
+            assertTrue(mos.addChannels(channel));
+            assertTrue(mos.hasChannel(channel));
+            assertEquals(mos.getOutputStreams().length, 0);
+
+            mos.write("Hello World".getBytes());
+            mos.flush();
+            mos.flush();
+            mos.write("Goodbye World".getBytes());
+            mos.flush();
+
+            assertEquals(Files.readString(file),
+                    "[Hello World][Goodbye World]");
+            assertTrue(mos.removeChannels(channel));
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+
+    @Test
+    public void linger() throws IOException, InterruptedException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(os)
+                .setAutoFlush(true).setLinger(16, 50_000);
+
+        mos.write("line 1\n".getBytes());
+        assertEquals(os.size(), 0);
+        mos.write("line 2 is longer\n".getBytes());
+        assertEquals(os.toString(), "line 1\nline 2 is longer\n");
+
+        mos.write("line 3\n".getBytes());
+        for (int i = 0; i < 100 && os.size() < 31; i++)
+            Thread.sleep(10);
+        assertEquals(os.toString(), "line 1\nline 2 is longer\nline 3\n");
+        mos.close();
+    }
+
+
+    @Test(timeOut = 10_000)
+    public void lingerIsolated() throws IOException, InterruptedException
+    {
+        AsyncOutputStreamTest.GatedOutputStream stalled =
+                new AsyncOutputStreamTest.GatedOutputStream();
+        MultiplexOutputStream stuck =
+                new MultiplexOutputStream(stalled).setLinger(0, 1_000);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        MultiplexOutputStream mos =
+                new MultiplexOutputStream(os).setLinger(0, 1_000);
+
+        /*
+         * The stuck stream's linger flush blocks in its subscriber, which
+         * must not hold up the other stream's
+         */
+        stuck.write("stuck\n".getBytes());
+        Thread.sleep(50);
+        mos.write("line\n".getBytes());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (os.size() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(os.toString(), "line\n");
+
+        stalled.gate.countDown();
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stalled.size() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(stalled.toString(), "stuck\n");
+        mos.close();
+        stuck.close();
+    }
+
+
+    @Test
+    public void recordFraming() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(os)
+                .setRecordFraming(true);
+
+        byte[] b = "xxline 1\nline 2\nline".getBytes();
+        mos.write(b, 2, b.length - 2);
+        mos.flush();
+        assertEquals(os.toString(), "line 1\nline 2\n");
+
+        mos.write(" 3".getBytes());
+        mos.flush();
+        assertEquals(os.toString(), "line 1\nline 2\n");
+
+        mos.setAutoFlush(true);
+        mos.write('\n');
+        assertEquals(os.toString(), "line 1\nline 2\nline 3\n");
+        mos.close();
+    }
+
+
+    @Test
+    public void recordFramingLinger() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(os)
+                .setRecordFraming(true).setLinger(16, 0);
+        long seq = mos.getFlushSequence();
+
+        /*
+         * An unfinished record past the linger size is not flushed on every
+         * write, only once it is complete
+         */
+        for (int i = 0; i < 100; i++)
+            mos.write("0123456789".getBytes());
+        assertEquals(mos.getFlushSequence(), seq);
+        assertEquals(os.size(), 0);
+
+        mos.write('\n');
+        assertEquals(mos.getFlushSequence(), seq + 1);
+        assertEquals(os.size(), 1001);
+        mos.close();
+    }
+
+
+    @Test
+    public void awaitFlush() throws IOException, InterruptedException
+    {
+        MultiplexOutputStream mos = new MultiplexOutputStream();
+        long seq = mos.getFlushSequence();
+
+        assertEquals(mos.awaitFlush(seq, 10, TimeUnit.MILLISECONDS), seq);
+        CompletableFuture<Long> next = mos.onFlush(seq);
+        assertFalse(next.isDone());
+
+        Thread flusher = new Thread(() -> {
+            try
+            {
+                Thread.sleep(20);
+                mos.flush();
+            }
+            catch (IOException | InterruptedException e)
+            {
+            }
+        });
+        flusher.start();
+
+        assertEquals(mos.awaitFlush(seq, 5, TimeUnit.SECONDS), seq + 1);
+        assertEquals(next.join().longValue(), seq + 1);
+        assertTrue(mos.onFlush(seq).isDone());
+        flusher.join();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                r -> new Thread(r, "flush-waiter"));
+        CompletableFuture<String> thread = mos.onFlush(seq + 1, executor)
+                .thenApply(flushed -> Thread.currentThread().getName());
+        mos.flush();
+        assertEquals(thread.join(), "flush-waiter");
+        executor.shutdown();
+    }
+
+
+    @Test
+    public void recordFilter() throws IOException
+    {
+        ByteArrayOutputStream all = new ByteArrayOutputStream(),
+                errors = new ByteArrayOutputStream(),
+                audit = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(all)
+                .setPostfix("--\n".getBytes());
+        mos.addOutputStream(errors, RecordFilter.byteAt(0, (byte) 'E'));
+        mos.addOutputStream(audit, RecordFilter.startsWith("I audit"));
+
+        mos.write("I audit one\nE broken\nE again\nW meh\nI audit two".getBytes());
+        mos.flush();
+        mos.write("W nothing\n".getBytes());
+        mos.flush();
+
+        assertEquals(all.toString(),
+                "I audit one\nE broken\nE again\nW meh\nI audit two--\nW nothing\n--\n");
+        assertEquals(errors.toString(), "E broken\nE again\n--\n");
+        assertEquals(audit.toString(), "I audit one\nI audit two--\n");
+    }
+
+
+    @Test
+    public void bufferLimits() throws IOException
+    {
+        ByteArrayOutputStream all = new ByteArrayOutputStream(),
+                errors = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(all)
+                .setBufferLimits(8, 32, 16,
+                        MultiplexOutputStream.BufferOverflowPolicy.DROP);
+        mos.addOutputStream(errors, RecordFilter.byteAt(0, (byte) 'E'));
+
+        mos.write("I first line\nE spans chunks\n".getBytes());
+        mos.write("this will not fit".getBytes());
+        assertEquals(mos.getDroppedBytes(), 17);
+        assertEquals(mos.getBufferedBytes(), 32);
+        mos.flush();
+        assertEquals(mos.getBufferedBytes(), 0);
+        assertEquals(errors.toString(), "E spans chunks\n");
+
+        mos.write("I again\n".getBytes());
+        mos.flush();
+        assertEquals(all.toString(), "I first line\nE spans chunks\nI again\n");
+        assertEquals(mos.getBufferHighWaterMark(), 32);
+        assertEquals(mos.getChunksAllocated(), 4);
+        assertEquals(mos.getChunksReused(), 1);
+
+        mos.setBufferLimits(8, 16, 0,
+                MultiplexOutputStream.BufferOverflowPolicy.FAIL);
+        try
+        {
+            mos.write("far too long for the ceiling".getBytes());
+            assertTrue(false);
+        }
+        catch (IOException e)
+        {
+            assertEquals(mos.getDroppedBytes(), 17 + 28);
+        }
+    }
+
+
+    @Test
+    public void parallelFanOut() throws IOException, InterruptedException
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        AsyncOutputStreamTest.GatedOutputStream slow =
+                new AsyncOutputStreamTest.GatedOutputStream();
+        ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(slow, fast)
+                .setParallelFanOut(executor, 500, TimeUnit.MILLISECONDS);
+
+        mos.write("line 1\n".getBytes());
+        mos.flush();
+        mos.write("line 2\n".getBytes());
+        mos.flush();
+
+        assertEquals(fast.toString(), "line 1\nline 2\n");
+        assertEquals(mos.getStragglers(), new Object[] { slow });
+        assertEquals(mos.getStragglerCount(), 2);
+
+        /*
+         * The second write is queued behind the first, so wait for it
+         * before shutting the executor down
+         */
+        slow.gate.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (slow.size() < 14 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(slow.toString(), "line 1\nline 2\n");
+    }
+
+
+    @Test(timeOut = 10_000)
+    public void serialBehindStraggler() throws IOException,
+            InterruptedException
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        AsyncOutputStreamTest.GatedOutputStream slow =
+                new AsyncOutputStreamTest.GatedOutputStream();
+        ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        MultiplexOutputStream mos = new MultiplexOutputStream(slow, fast)
+                .setParallelFanOut(executor, 10, TimeUnit.MILLISECONDS);
+
+        mos.write("line 1\n".getBytes());
+        mos.flush();
+        assertEquals(mos.getStragglers(), new Object[] { slow });
+
+        /*
+         * One subscriber left, so the next flush is serial: it must queue
+         * behind the straggling write rather than block on or overtake it
+         */
+        mos.removeOutputStreams(fast);
+        mos.write("line 2\n".getBytes());
+        mos.flush();
+
+        slow.gate.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (slow.size() < 14 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        executor.shutdown();
+        assertEquals(slow.toString(), "line 1\nline 2\n");
+    }
+
+
     /* ---------------------------------------------------------------- */
 
     private void exercise(OutputStream... os) throws IOException
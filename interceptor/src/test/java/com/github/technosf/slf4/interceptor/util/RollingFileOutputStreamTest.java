@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.annotations.Test;
+
+public class RollingFileOutputStreamTest
+{
+
+    @Test
+    public void rollBySize() throws IOException
+    {
+        Path dir = Files.createTempDirectory("rolling");
+        RollingFileOutputStream out = new RollingFileOutputStream(dir, "app",
+                100, 1, TimeUnit.HOURS);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+        {
+            String line = "line " + i + " of the intercepted output\n";
+            expected.append(line);
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+        out.close();
+
+        List<Path> gz = segments(dir, ".gz");
+        assertEquals(gz.size(), out.getRolledSegments());
+        assertTrue(gz.size() > 10);
+        assertEquals(out.getCompressedSegments(), gz.size());
+        assertEquals(out.getPendingCompressions(), 0);
+        assertEquals(segments(dir, ".log").size(), 1);
+
+        StringBuilder actual = new StringBuilder();
+        for (Path segment : gz)
+        {
+            String text = gunzip(segment);
+            assertTrue(text.endsWith("\n"));
+            actual.append(text);
+        }
+        actual.append(Files.readString(out.getActiveSegment()));
+        assertEquals(actual.toString(), expected.toString());
+
+        assertTrue(out.getCompressionInputBytes() > 0);
+        assertTrue(out.getCompressionOutputBytes() > 0);
+        assertTrue(out.getCompressionThroughput() > 0);
+    }
+
+
+    @Test
+    public void rollByAgeAndAppend() throws IOException, InterruptedException
+    {
+        Path dir = Files.createTempDirectory("rolling");
+        RollingFileOutputStream out = new RollingFileOutputStream(dir, "app",
+                1 << 20, 50, TimeUnit.MILLISECONDS);
+        out.write("old\n".getBytes());
+        out.flush();
+        assertEquals(Files.readString(out.getActiveSegment()), "old\n");
+        Thread.sleep(100);
+        out.write("new\n".getBytes());
+        out.close();
+
+        List<Path> gz = segments(dir, ".gz");
+        assertEquals(gz.size(), 1);
+        assertEquals(gunzip(gz.get(0)), "old\n");
+
+        /*
+         * Reopening appends to the active segment
+         */
+        out = new RollingFileOutputStream(dir, "app", 1 << 20, 1,
+                TimeUnit.HOURS);
+        assertEquals(out.getSegmentBytes(), 4);
+        out.write("more\n".getBytes());
+        out.roll();
+        out.close();
+        assertEquals(segments(dir, ".gz").size(), 2);
+        assertEquals(Files.size(out.getActiveSegment()), 0);
+    }
+
+
+    @Test
+    public void recover() throws IOException
+    {
+        Path dir = Files.createTempDirectory("rolling");
+        Files.writeString(dir.resolve("app-20160101-000000-001.log"),
+                "left\n");
+        Files.writeString(dir.resolve("app-20160101-000000-001.log.gz.part"),
+                "partial");
+        Files.writeString(dir.resolve("other-20160101-000000-001.log"),
+                "other\n");
+
+        RollingFileOutputStream out = new RollingFileOutputStream(dir, "app",
+                1 << 20, 1, TimeUnit.HOURS);
+        out.close();
+
+        List<Path> gz = segments(dir, ".gz");
+        assertEquals(gz.size(), 1);
+        assertEquals(gunzip(gz.get(0)), "left\n");
+        assertEquals(out.getCompressedSegments(), 1);
+        assertTrue(segments(dir, ".part").isEmpty());
+        assertTrue(Files.exists(dir.resolve("other-20160101-000000-001.log")));
+    }
+
+
+    @Test
+    public void reopen() throws IOException
+    {
+        Path dir = Files.createTempDirectory("rolling");
+        RollingFileOutputStream out = new RollingFileOutputStream(dir, "app",
+                1 << 20, 1, TimeUnit.HOURS, 16, 1, Thread::new);
+
+        /*
+         * An interrupted write closes the channel under the stream
+         */
+        Thread.currentThread().interrupt();
+        try
+        {
+            out.write("lost in the interrupt\n".getBytes());
+            assertTrue(false);
+        }
+        catch (IOException e)
+        {
+            assertTrue(Thread.interrupted());
+        }
+
+        out.write("after\n".getBytes());
+        out.roll();
+        out.write("rolled\n".getBytes());
+        out.close();
+        assertEquals(gunzip(segments(dir, ".gz").get(0)), "after\n");
+        assertEquals(Files.readString(out.getActiveSegment()), "rolled\n");
+    }
+
+
+    /* ---------------------------------------------------------------- */
+
+    private static List<Path> segments(Path dir, String suffix)
+            throws IOException
+    {
+        try (Stream<Path> files = Files.list(dir))
+        {
+            return files.filter(p -> p.toString().endsWith(suffix)).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+
+    private static String gunzip(Path gz) throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gz)))
+        {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.technosf.slf4.interceptor.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.2
+ * @version 0.0.2
+ */
+public class TailReaderTest
+{
+
+    @Test
+    public void tail() throws IOException, InterruptedException
+    {
+        MulticastRingBuffer ring = new MulticastRingBuffer(256);
+        ring.write("before\n".getBytes());
+        long mark = ring.getSequence();
+        ring.write("first ".getBytes());
+
+        TailReader now = ring.tail(), replay = ring.tail(0);
+        assertNull(now.poll());
+        assertEquals(new String(replay.poll()), "before");
+        assertNull(replay.poll());
+
+        CompletableFuture<byte[]> next = now.nextAsync();
+        assertFalse(next.isDone());
+        ring.write("record\nsecond".getBytes());
+        assertEquals(new String(next.join()), "record");
+        assertEquals(new String(replay.take(1, TimeUnit.SECONDS)),
+                "first record");
+        assertNull(replay.take(10, TimeUnit.MILLISECONDS));
+
+        TailReader fromMark = ring.tail(mark);
+        Thread closer = new Thread(() -> {
+            try
+            {
+                Thread.sleep(50);
+                ring.write(" record\n".getBytes());
+            }
+            catch (IOException | InterruptedException e)
+            {
+            }
+            ring.close();
+        });
+        closer.start();
+        assertEquals(new String(now.next()), "second record");
+        assertFalse(now.hasNext());
+        assertTrue(now.isEnded());
+        assertEquals(new String(fromMark.next()), "first record");
+        assertEquals(new String(fromMark.next()), "second record");
+        assertFalse(fromMark.hasNext());
+        closer.join();
+    }
+
+
+    @Test(timeOut = 10_000)
+    public void nextAsyncOffWriter() throws IOException
+    {
+        MulticastRingBuffer ring = new MulticastRingBuffer(256);
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                r -> new Thread(r, "tail-reader"));
+        try (TailReader reader = ring.tail())
+        {
+            CompletableFuture<String> thread = reader.nextAsync(executor)
+                    .thenApply(record -> Thread.currentThread().getName());
+            assertFalse(thread.isDone());
+            ring.write("record\n".getBytes());
+            assertEquals(thread.join(), "tail-reader");
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}